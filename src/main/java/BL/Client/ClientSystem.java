@@ -2,6 +2,7 @@ package BL.Client;
 
 import BL.Client.Handlers.*;
 import BL.Communication.ClientServerCommunication;
+import BL.Server.utils.Configuration;
 import DL.Administration.AssociationMember;
 import DL.Administration.SystemManager;
 import DL.Game.Referee;
@@ -11,6 +12,7 @@ import DL.Users.User;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
@@ -22,6 +24,14 @@ public class ClientSystem
     private static User loggedUser = null;
     public static ClientServerCommunication communication = new ClientServerCommunication();
 
+    static {
+        if(Boolean.parseBoolean(Configuration.getPropertyValue("client.cache.enabled")))
+        {
+            communication.setNearCache(new NearCache(Integer.parseInt(Configuration.getPropertyValue("client.cache.maxEntries")),
+                    Long.parseLong(Configuration.getPropertyValue("client.cache.ttl"))));
+        }
+    }
+
     public AssociationManagementUnit associationManagementUnit;
     public ComplaintUnit complaintUnit;
     public FinancialUnit financialUnit;
@@ -63,25 +73,28 @@ public class ClientSystem
             if(loggedUser instanceof AssociationMember) return UserTypes.Association;
             if(loggedUser instanceof SystemManager) return UserTypes.Admin;
 
-            HashMap<String,Object> params = new HashMap<>();
-            List queryResult;
+            // the role queries are independent - send all of them at once
+            HashMap<String,Object> userParams = new HashMap<>();
+            userParams.put("user",loggedUser);
+            HashMap<String,Object> fanParams = new HashMap<>();
+            fanParams.put("fan",loggedUser);
+            // only the type of the results is used - don't load their associations
+            CompletableFuture<List<?>> referees = communication.queryAsync("activeRefereeByUser",userParams,"Referee.role");
+            CompletableFuture<List<?>> teamUsers = communication.queryAsync("ActiveTeamUserByFan",fanParams,"TeamUser.role");
+            CompletableFuture<List<?>> teamOwners = communication.queryAsync("TeamOwnerByUser",userParams,"TeamOwner.role");
+            List<?> queryResult;
 
             // check if referee
-            params.put("user",loggedUser);
-            queryResult = communication.query("activeRefereeByUser",params);
+            queryResult = referees.join();
             if(queryResult != null && !queryResult.isEmpty()) return UserTypes.Referee;
 
             // check if team user
-            params.clear();
-            params.put("fan",loggedUser);
-            queryResult = communication.query("ActiveTeamUserByFan",params);
+            queryResult = teamUsers.join();
             if(queryResult != null && !queryResult.isEmpty())
             {
                 TeamUser teamUser = (TeamUser)queryResult.get(0);
                 // check if team owner
-                params.clear();
-                params.put("user",loggedUser);
-                queryResult = communication.query("TeamOwnerByUser",params);
+                queryResult = teamOwners.join();
                 if(queryResult != null && !queryResult.isEmpty())
                 {
                     if(teamUser instanceof Player) return UserTypes.OwnerPlayer;
@@ -136,5 +149,6 @@ public class ClientSystem
     public void close()
     {
         communication.stopListener();
+        communication.closeConnections();
     }
 }
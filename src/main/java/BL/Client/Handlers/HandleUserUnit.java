@@ -379,6 +379,7 @@ public class HandleUserUnit
      */
     public boolean logOut()
     {
+        communication.unsubscribe();
         return ClientSystem.logOut();
     }
 
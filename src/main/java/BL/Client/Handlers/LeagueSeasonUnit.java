@@ -7,12 +7,15 @@ import DL.Game.LeagueSeason.Season;
 import DL.Game.Policy.GamePolicy;
 import DL.Game.Policy.ScorePolicy;
 import DL.Game.Referee;
+import DL.Projections.RefereeRow;
+import DL.Projections.TeamRow;
 import DL.Team.Team;
 import DL.Users.Fan;
 import com.sun.scenario.effect.impl.sw.sse.SSEBlend_SRC_OUTPeer;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import javax.transaction.Transactional;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -401,4 +404,49 @@ public class LeagueSeasonUnit {
         return referees;
     }
 
+    /**
+     * @return the names and status of the teams in the system, for lists that don't need the teams themselves.
+     */
+    public List<TeamRow> getTeamRows() {
+        List<?> rows = clientServerCommunication.query("TeamRows", null);
+        if (rows == null) return null;
+
+        List<TeamRow> teams = new ArrayList<>(rows.size());
+        for (Object row : rows) teams.add((TeamRow) row);
+        return teams;
+    }
+
+    /**
+     * @return the ids and names of the referees in the system, for lists that don't need the referees themselves.
+     */
+    public List<RefereeRow> getRefereeRows() {
+        List<?> rows = clientServerCommunication.query("RefereeRows", null);
+        if (rows == null) return null;
+
+        List<RefereeRow> referees = new ArrayList<>(rows.size());
+        for (Object row : rows) referees.add((RefereeRow) row);
+        return referees;
+    }
+
+    /**
+     * @return the referee of a row of the referees list
+     */
+    public Referee getReferee(RefereeRow refereeRow) throws Exception {
+        if (refereeRow == null)
+            throw new Exception("Parameters should not be null. Please try again");
+
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("id", refereeRow.getId());
+        List<?> referees = clientServerCommunication.query("RefereeById", parameters);
+        if (referees == null) {
+            throw new Exception("There was a problem with the connection to the server. Please try again later");
+
+        } else if (referees.size() <= 0) {
+            throw new Exception("The referee does not exist.");
+
+        } else {
+            return (Referee) referees.get(0);
+        }
+    }
+
 }
@@ -54,12 +54,13 @@ public class MatchEventUnit
         if(cachedReferee != null && cachedReferee.getFan().equals(user)) return true; // cached user, nothing to get
 
         // new user, fetch info from server
-        List<Referee> queryResult = communication.query("activeRefereeByUser",mapOf("user",user));
+        // only what event entry uses - the referee's matches, their players and event logs
+        List<?> queryResult = communication.query("activeRefereeByUser",mapOf("user",user),"Referee.eventEntry");
 
         if(queryResult == null || queryResult.isEmpty()) return false; // not a team owner or exception
 
         // only one can be returned from the query
-        cachedReferee = queryResult.get(0);
+        cachedReferee = (Referee) queryResult.get(0);
 
         return true;
     }
@@ -1,9 +1,7 @@
 package BL.Client.Handlers;
 
 import BL.Communication.ClientServerCommunication;
-import BL.Communication.SystemRequest;
 import DL.Game.LeagueSeason.LeagueSeason;
-import DL.Game.Match;
 import DL.Game.Policy.GamePolicy;
 import DL.Game.Policy.ScorePolicy;
 import DL.Team.Team;
@@ -115,12 +113,8 @@ public class PoliciesUnit {
                 if (!leagueSeason.scheduleLeagueMatches())
                     throw new Exception("There is less than two teams in the leagueSeason. " +
                             "Please add teams first and than try again.");
-                //league has matches - send transaction of insert matches
-                List<SystemRequest> systemRequests = new ArrayList<>();
-                for (Match m : leagueSeason.getMatches()) {
-                    systemRequests.add(new SystemRequest(SystemRequest.Type.Insert, null, m));
-                }
-                return clientServerCommunication.transaction(systemRequests);
+                //league has matches - insert all of them in a single request (batched on the server)
+                return clientServerCommunication.insert(new ArrayList<>(leagueSeason.getMatches()));
             }
             //LeagueSeason already have matches
             else {
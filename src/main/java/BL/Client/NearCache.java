@@ -0,0 +1,183 @@
+package BL.Client;
+
+import BL.Communication.BinaryCodec;
+import BL.Communication.WireCodec;
+import BL.Server.utils.QueryCache;
+
+import javax.persistence.Id;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description:     Client side cache of query results (near cache)
+ *                  * Results are kept encoded and decoded on every hit, so a handler that changes a result never
+ *                    changes the cached copy
+ *                  * Every result remembers the tables its query and the associations it loads read (asked from
+ *                    the server once per query name and fetch graph),
+ *                    the server pushes the written tables after every commit (see CacheInvalidation)
+ *                  * Entries are versioned - a result of a query that overlapped an invalidation is not cached
+ *                  * A write of this client drops the whole cache, so the client always reads its own writes
+ **/
+public class NearCache
+{
+    private final QueryCache results;
+    private final WireCodec codec = new BinaryCodec();
+    private final Map<String, Set<String>> querySpaces = new ConcurrentHashMap<>(); // empty - not cacheable
+    private final Map<Class<?>, Field> idFields = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param maxEntries - max number of cached results
+     * @param ttl - time (ms) a result stays in the cache without an invalidation
+     */
+    public NearCache(int maxEntries, long ttl)
+    {
+        results = new QueryCache(maxEntries, ttl);
+    }
+
+    /**
+     * @param resultName - name of a named query, with "/" and its fetch graph if it has one
+     * @return the tables the results read, empty if they can't be cached, null if still unknown
+     */
+    public Set<String> getQuerySpaces(String resultName)
+    {
+        return querySpaces.get(resultName);
+    }
+
+    /**
+     * @param resultName - name of a named query, with "/" and its fetch graph if it has one
+     * @param tables - the tables the results read, null if they can't be cached
+     */
+    public void setQuerySpaces(String resultName, Set<String> tables)
+    {
+        querySpaces.put(resultName, tables == null ? Collections.emptySet() : tables);
+    }
+
+    /**
+     * @return key of the query, entity parameters are replaced by their class and id, null if a parameter
+     * can't be compared by value
+     */
+    public QueryCache.Key key(String queryName, Map<?, ?> parameters)
+    {
+        HashMap<String, Object> values = new HashMap<>();
+        if(parameters != null)
+        {
+            for(Map.Entry<?, ?> parameter : parameters.entrySet())
+            {
+                Object value = parameter.getValue();
+                if(!(value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                        || value instanceof Character || value instanceof Date || value instanceof Enum))
+                {
+                    Object id = entityId(value);
+                    if(id == null) return null;
+                    value = value.getClass().getName() + "#" + id;
+                }
+                values.put((String) parameter.getKey(), value);
+            }
+        }
+        return new QueryCache.Key(queryName, values, 0, 0);
+    }
+
+    /**
+     * @return the current version, read it before sending the query and pass it to put
+     */
+    public long epoch()
+    {
+        return results.epoch();
+    }
+
+    /**
+     * @param key - key of the query
+     * @return a fresh copy of the cached result, null if there is no valid one
+     */
+    public List<?> get(QueryCache.Key key)
+    {
+        byte[] encoded = (byte[]) results.get(key);
+        if(encoded == null) return null;
+        try
+        {
+            return (List<?>) codec.decode(encoded, 0, encoded.length);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param key - key of the query
+     * @param tables - the tables the query reads
+     * @param startEpoch - version read before the query was sent
+     * @param result - result of the query
+     */
+    public void put(QueryCache.Key key, Set<String> tables, long startEpoch, List<?> result)
+    {
+        try
+        {
+            results.put(key, tables, startEpoch, codec.encode(result));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param tables - tables that were written on the server
+     */
+    public void invalidate(Collection<String> tables)
+    {
+        results.invalidate(tables);
+    }
+
+    /**
+     * drop all the results - after a write of this client
+     */
+    public void invalidateAll()
+    {
+        results.invalidateAll();
+    }
+
+    public QueryCache getResults()
+    {
+        return results;
+    }
+
+    /**
+     * @return value of the @Id field of an entity, null if the object is not an entity or has no id yet
+     */
+    private Object entityId(Object entity)
+    {
+        Field idField = idFields.computeIfAbsent(entity.getClass(), type -> {
+            for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass())
+            {
+                for(Field field : c.getDeclaredFields())
+                {
+                    if(field.isAnnotationPresent(Id.class))
+                    {
+                        field.setAccessible(true);
+                        return field;
+                    }
+                }
+            }
+            return null;
+        });
+        if(idField == null) return null;
+        try
+        {
+            return idField.get(entity);
+        }
+        catch (IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+}
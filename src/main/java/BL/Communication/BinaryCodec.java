@@ -0,0 +1,508 @@
+package BL.Communication;
+
+import DL.Administration.AssociationMember;
+import DL.Administration.Financial.AssociationFinancialEntry;
+import DL.Administration.Financial.TeamFinancialEntry;
+import DL.Administration.SystemManager;
+import DL.Game.LeagueSeason.League;
+import DL.Game.LeagueSeason.LeagueSeason;
+import DL.Game.LeagueSeason.Season;
+import DL.Game.Match;
+import DL.Game.MatchEvents.*;
+import DL.Game.Policy.GamePolicy;
+import DL.Game.Policy.ScorePolicy;
+import DL.Game.Referee;
+import DL.Projections.RefereeRow;
+import DL.Projections.TeamRow;
+import DL.Team.Assets.Stadium;
+import DL.Team.Members.Coach;
+import DL.Team.Members.Player;
+import DL.Team.Members.TeamManager;
+import DL.Team.Members.TeamOwner;
+import DL.Team.Page.TeamPage;
+import DL.Team.Page.UserPage;
+import DL.Team.Team;
+import DL.Users.Fan;
+import DL.Users.InboxNotification;
+import DL.Users.Notification;
+import DL.Users.NotificationInbox;
+import DL.Users.UserComplaint;
+import DL.Users.UserPermission;
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description:     Compact schema driven binary codec
+ *                  * The request/response envelope is written field by field, without class descriptors
+ *                  * Entities are written as a class id and their fields in a fixed order (the schema of the class),
+ *                    the hot entity types have a fixed class id, other classes are written by name once per message
+ *                  * Shared objects and cycles (team -> match -> team) are written once and then referenced by handle
+ *                  * Numbers use variable length encoding, collections are written as plain lists/sets/maps
+ *                  Everything the schema can't describe (no default constructor, custom serialization, lazy hibernate
+ *                  proxies) falls back to java serialization inside the binary message
+ **/
+public class BinaryCodec implements WireCodec
+{
+    public static final byte ID = 1;
+
+    // value tags
+    private static final int NULL = 0, TRUE = 1, FALSE = 2, INT = 3, LONG = 4, DOUBLE = 5, STRING = 6, DATE = 7,
+            TIMESTAMP = 8, LIST = 9, SET = 10, MAP = 11, ARRAY = 12, ENUM = 13, OBJECT = 14, REF = 15, JAVA = 16,
+            REQUEST = 17, RESPONSE = 18;
+
+    /* classes with a fixed id - must be the same on the client and the server, only append to the end */
+    private static final List<Class<?>> REGISTERED = Arrays.asList(
+            SystemRequest.Type.class, UserPermission.Permission.class,
+            Team.class, Match.class, LeagueSeason.class, League.class, Season.class, Referee.class,
+            GamePolicy.class, ScorePolicy.class, Stadium.class, EventLog.class,
+            Goal.class, YellowCard.class, RedCard.class, Foul.class, Injury.class, Offside.class,
+            PenaltyKick.class, PlayerChange.class, StoppageTime.class, EndGame.class,
+            Player.class, Coach.class, TeamManager.class, TeamOwner.class, TeamPage.class, UserPage.class,
+            Fan.class, AssociationMember.class, SystemManager.class, Notification.class,
+            UserPermission.class, UserComplaint.class, TeamFinancialEntry.class, AssociationFinancialEntry.class,
+            QueryChunk.class, TeamRow.class, RefereeRow.class, PushMessage.class,
+            InboxNotification.class, NotificationInbox.class);
+    private static final Map<Class<?>, Integer> REGISTERED_IDS = new HashMap<>();
+    private static final Map<Class<?>, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+    static
+    {
+        for(int i = 0; i < REGISTERED.size(); i++) REGISTERED_IDS.put(REGISTERED.get(i), i);
+    }
+
+    private final JavaSerializationCodec fallback = new JavaSerializationCodec();
+
+    @Override
+    public byte getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object object) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        new Encoder(new DataOutputStream(bytes)).write(object);
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] buffer, int offset, int length) throws IOException
+    {
+        return new Decoder(new DataInputStream(new ByteArrayInputStream(buffer, offset, length))).read();
+    }
+
+    /**
+     * The fields of a class in the order they are written, null constructor if the class is written with java serialization
+     */
+    private static final class Schema
+    {
+        final Constructor<?> constructor;
+        final Field[] fields;
+
+        Schema(Constructor<?> constructor, Field[] fields)
+        {
+            this.constructor = constructor;
+            this.fields = fields;
+        }
+
+        boolean isSupported()
+        {
+            return constructor != null;
+        }
+    }
+
+    private static Schema schemaOf(Class<?> type)
+    {
+        return SCHEMAS.computeIfAbsent(type, BinaryCodec::createSchema);
+    }
+
+    private static Schema createSchema(Class<?> type)
+    {
+        Schema unsupported = new Schema(null, null);
+        String name = type.getName();
+        if(!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type) || type.isArray()
+                || Modifier.isAbstract(type.getModifiers()) || name.startsWith("java.") || name.startsWith("javax.")
+                || name.startsWith("org.hibernate."))
+        {
+            return unsupported;
+        }
+
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) hierarchy.add(0, c);
+
+        List<Field> fields = new ArrayList<>();
+        for(Class<?> c : hierarchy)
+        {
+            if(hasCustomSerialization(c)) return unsupported;
+
+            Field[] declared = c.getDeclaredFields();
+            Arrays.sort(declared, Comparator.comparing(Field::getName)); // same order on every jvm
+            for(Field field : declared)
+            {
+                int modifiers = field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+
+        try
+        {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return new Schema(constructor, fields.toArray(new Field[0]));
+        }
+        catch (NoSuchMethodException e)
+        {
+            return unsupported;
+        }
+    }
+
+    private static boolean hasCustomSerialization(Class<?> type)
+    {
+        List<String> serializationMethods = Arrays.asList("writeObject", "readObject", "writeReplace", "readResolve");
+        for(Method declared : type.getDeclaredMethods())
+        {
+            if(serializationMethods.contains(declared.getName())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a single message, keeps the handles of the objects that were already written
+     */
+    private final class Encoder
+    {
+        private final DataOutputStream out;
+        private final Map<Object, Integer> handles = new IdentityHashMap<>();
+        private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+        Encoder(DataOutputStream out)
+        {
+            this.out = out;
+        }
+
+        void write(Object value) throws IOException
+        {
+            if(value == null) { out.writeByte(NULL); return; }
+            if(value instanceof Boolean) { out.writeByte((Boolean) value ? TRUE : FALSE); return; }
+            if(value instanceof Integer) { out.writeByte(INT); writeVarLong(zigZag((Integer) value)); return; }
+            if(value instanceof Long) { out.writeByte(LONG); writeVarLong(zigZag((Long) value)); return; }
+            if(value instanceof Double) { out.writeByte(DOUBLE); out.writeDouble((Double) value); return; }
+            if(value instanceof String) { out.writeByte(STRING); writeString((String) value); return; }
+            if(value.getClass() == Date.class) { out.writeByte(DATE); out.writeLong(((Date) value).getTime()); return; }
+            if(value.getClass() == Timestamp.class)
+            {
+                out.writeByte(TIMESTAMP);
+                out.writeLong(((Timestamp) value).getTime());
+                writeVarLong(((Timestamp) value).getNanos());
+                return;
+            }
+            if(value instanceof Enum)
+            {
+                out.writeByte(ENUM);
+                writeClass(((Enum<?>) value).getDeclaringClass());
+                writeVarLong(((Enum<?>) value).ordinal());
+                return;
+            }
+            if(value instanceof SystemRequest)
+            {
+                SystemRequest request = (SystemRequest) value;
+                out.writeByte(REQUEST);
+                writeVarLong(request.type.ordinal());
+                writeVarLong(request.requestId);
+                writeVarLong(request.firstResult);
+                writeVarLong(request.maxResults);
+                write(request.queryName);
+                write(request.fetchGraph);
+                write(request.data);
+                return;
+            }
+            if(value instanceof SystemResponse)
+            {
+                SystemResponse response = (SystemResponse) value;
+                out.writeByte(RESPONSE);
+                writeVarLong(response.requestId);
+                write(response.data);
+                write(response.error);
+                return;
+            }
+
+            Integer handle = handles.get(value);
+            if(handle != null) { out.writeByte(REF); writeVarLong(handle); return; }
+
+            if(!isPlain(value)) { writeJava(value); return; }
+
+            if(value instanceof Collection || value instanceof Map || value.getClass() == Object[].class)
+            {
+                handles.put(value, handles.size());
+                if(value instanceof Map)
+                {
+                    Map<?, ?> map = (Map<?, ?>) value;
+                    out.writeByte(MAP);
+                    writeVarLong(map.size());
+                    for(Map.Entry<?, ?> entry : map.entrySet())
+                    {
+                        write(entry.getKey());
+                        write(entry.getValue());
+                    }
+                    return;
+                }
+
+                Collection<?> elements = value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+                out.writeByte(value instanceof List ? LIST : value instanceof Set ? SET : ARRAY);
+                writeVarLong(elements.size());
+                for(Object element : elements) write(element);
+                return;
+            }
+
+            Schema schema = schemaOf(value.getClass());
+            if(!schema.isSupported()) { writeJava(value); return; }
+
+            handles.put(value, handles.size());
+            out.writeByte(OBJECT);
+            writeClass(value.getClass());
+            try
+            {
+                for(Field field : schema.fields) write(field.get(value));
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * @return false if the value must be written with java serialization
+         */
+        private boolean isPlain(Object value)
+        {
+            if(value instanceof HibernateProxy || !Hibernate.isInitialized(value)) return false;
+            if(value instanceof Collection)
+            {
+                return (value instanceof List || value instanceof Set) && !(value instanceof SortedSet) && !(value instanceof EnumSet);
+            }
+            if(value instanceof Map) return !(value instanceof SortedMap) && !(value instanceof EnumMap);
+            return true;
+        }
+
+        private void writeJava(Object value) throws IOException
+        {
+            byte[] bytes = fallback.encode(value);
+            out.writeByte(JAVA);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeClass(Class<?> type) throws IOException
+        {
+            Integer id = REGISTERED_IDS.get(type);
+            if(id != null) { writeVarLong(id); return; }
+
+            Integer dynamic = classes.get(type);
+            if(dynamic != null) { writeVarLong(REGISTERED.size() + 1 + dynamic); return; }
+
+            writeVarLong(REGISTERED.size()); // new class, written by name
+            writeString(type.getName());
+            classes.put(type, classes.size());
+        }
+
+        private void writeString(String value) throws IOException
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarLong(long value) throws IOException
+        {
+            while ((value & ~0x7FL) != 0)
+            {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private long zigZag(long value)
+        {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * Reads a single message, keeps the objects that were already read by their handles
+     */
+    private final class Decoder
+    {
+        private final DataInputStream in;
+        private final List<Object> handles = new ArrayList<>();
+        private final List<Class<?>> classes = new ArrayList<>();
+
+        Decoder(DataInputStream in)
+        {
+            this.in = in;
+        }
+
+        Object read() throws IOException
+        {
+            int tag = in.readUnsignedByte();
+            switch (tag)
+            {
+                case NULL: return null;
+                case TRUE: return true;
+                case FALSE: return false;
+                case INT: return (int) unZigZag(readVarLong());
+                case LONG: return unZigZag(readVarLong());
+                case DOUBLE: return in.readDouble();
+                case STRING: return readString();
+                case DATE: return new Date(in.readLong());
+                case TIMESTAMP:
+                    Timestamp timestamp = new Timestamp(in.readLong());
+                    timestamp.setNanos((int) readVarLong());
+                    return timestamp;
+                case ENUM:
+                    Class<?> enumType = readClass();
+                    return enumType.getEnumConstants()[(int) readVarLong()];
+                case REQUEST:
+                    SystemRequest request = new SystemRequest(SystemRequest.Type.values()[(int) readVarLong()], null, null);
+                    request.requestId = readVarLong();
+                    request.firstResult = (int) readVarLong();
+                    request.maxResults = (int) readVarLong();
+                    request.queryName = (String) read();
+                    request.fetchGraph = (String) read();
+                    request.data = read();
+                    return request;
+                case RESPONSE:
+                    long requestId = readVarLong();
+                    Object data = read();
+                    return new SystemResponse(requestId, data, (String) read());
+                case REF: return handles.get((int) readVarLong());
+                case JAVA:
+                    byte[] bytes = new byte[(int) readVarLong()];
+                    in.readFully(bytes);
+                    return fallback.decode(bytes, 0, bytes.length);
+                case LIST:
+                case SET:
+                case ARRAY:
+                    return readElements(tag);
+                case MAP:
+                    int size = (int) readVarLong();
+                    Map<Object, Object> map = new LinkedHashMap<>(capacity(size));
+                    handles.add(map);
+                    for(int i = 0; i < size; i++)
+                    {
+                        Object key = read();
+                        map.put(key, read());
+                    }
+                    return map;
+                case OBJECT:
+                    return readObject();
+                default:
+                    throw new IOException("unknown tag: " + tag);
+            }
+        }
+
+        private Object readElements(int tag) throws IOException
+        {
+            int size = (int) readVarLong();
+            if(tag == ARRAY)
+            {
+                Object[] array = new Object[size];
+                handles.add(array);
+                for(int i = 0; i < size; i++) array[i] = read();
+                return array;
+            }
+
+            Collection<Object> elements = tag == LIST ? new ArrayList<>(size) : new LinkedHashSet<>(capacity(size));
+            handles.add(elements);
+            for(int i = 0; i < size; i++) elements.add(read());
+            return elements;
+        }
+
+        private Object readObject() throws IOException
+        {
+            Class<?> type = readClass();
+            Schema schema = schemaOf(type);
+            if(!schema.isSupported()) throw new IOException("class can't be decoded: " + type.getName());
+
+            try
+            {
+                Object object = schema.constructor.newInstance();
+                handles.add(object); // before the fields, they may point back to this object
+                for(Field field : schema.fields) field.set(object, read());
+                return object;
+            }
+            catch (ReflectiveOperationException | IllegalArgumentException e)
+            {
+                throw new IOException(e);
+            }
+        }
+
+        private Class<?> readClass() throws IOException
+        {
+            int id = (int) readVarLong();
+            if(id < REGISTERED.size()) return REGISTERED.get(id);
+            if(id > REGISTERED.size()) return classes.get(id - REGISTERED.size() - 1);
+
+            String name = readString();
+            try
+            {
+                Class<?> type = Class.forName(name, false, BinaryCodec.class.getClassLoader());
+                if(!type.isEnum() && !schemaOf(type).isSupported()) throw new IOException("class can't be decoded: " + name);
+                classes.add(type);
+                return type;
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IOException(e);
+            }
+        }
+
+        private String readString() throws IOException
+        {
+            byte[] bytes = new byte[(int) readVarLong()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long readVarLong() throws IOException
+        {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7)
+            {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return value;
+            }
+            throw new IOException("malformed variable length number");
+        }
+
+        private long unZigZag(long value)
+        {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int capacity(int size)
+        {
+            return Math.max(16, (int) (size / 0.75f) + 1);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package BL.Communication;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Description:     Message pushed by the server to the subscribed clients (over their push channel, see PushServer)
+ *                  after a write to some tables was committed, the clients drop the cached results that read them
+ **/
+public class CacheInvalidation implements Serializable
+{
+    private final Set<String> tables;
+
+    /**
+     * Constructor
+     * @param tables - tables that were written
+     */
+    public CacheInvalidation(Set<String> tables)
+    {
+        this.tables = new HashSet<>(tables);
+    }
+
+    public Set<String> getTables()
+    {
+        return tables;
+    }
+}
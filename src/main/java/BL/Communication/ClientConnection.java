@@ -0,0 +1,149 @@
+package BL.Communication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description:     A long lived, multiplexed TCP connection from the client to the server
+ *                  The socket and the streams are created once and reused by many requests.
+ *                  Many requests can be in flight at the same time and the server may answer them in any order,
+ *                  a reader thread matches every answer to its request by the request id
+ **/
+class ClientConnection implements Closeable
+{
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final Map<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+    private volatile long lastUsed;
+    private volatile boolean broken;
+
+    /**
+     * Constructor - connects to the server, opens the streams and starts the reader thread
+     * @param serverIP - ip of the server
+     * @param serverPort - port of the server
+     * @param connectTimeout - max time (ms) to wait for the connection
+     * @throws IOException if the server can't be reached
+     */
+    ClientConnection(InetAddress serverIP, int serverPort, int connectTimeout) throws IOException
+    {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.connect(new InetSocketAddress(serverIP, serverPort), connectTimeout);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        lastUsed = System.currentTimeMillis();
+
+        Thread reader = new Thread(this::readResponses, "connection-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Send a request without waiting for its answer
+     * @param request - request to send, must have a unique request id
+     * @return future of the data of the matching response, fails if the request failed on the server or the
+     * connection is lost before the answer. Completing it (a timeout of the caller) ends the request, a late
+     * answer is ignored
+     * @throws IOException if the request could not be written
+     */
+    CompletableFuture<Object> send(SystemRequest request) throws IOException
+    {
+        CompletableFuture<Object> answer = new CompletableFuture<>();
+        pending.put(request.requestId, answer);
+        answer.whenComplete((data, error) -> pending.remove(request.requestId, answer));
+        try
+        {
+            if(broken) throw new IOException("connection is closed");
+            synchronized (out)
+            {
+                FrameCodec.writeFrame(out, request, FrameCodec.getDefaultCodec(),
+                        FrameCodec.isCompressionEnabled(), request.type + "/request");
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            pending.remove(request.requestId);
+            close();
+            throw e;
+        }
+
+        lastUsed = System.currentTimeMillis();
+        return answer;
+    }
+
+    /**
+     * reader thread - complete the pending requests until the connection is closed,
+     * then fail all the requests that were not answered
+     */
+    private void readResponses()
+    {
+        try
+        {
+            while (true)
+            {
+                SystemResponse response = (SystemResponse) FrameCodec.readFrame(in);
+                lastUsed = System.currentTimeMillis();
+                CompletableFuture<Object> answer = pending.remove(response.requestId);
+                if(answer == null) continue; // the caller stopped waiting
+                if(response.error != null) answer.completeExceptionally(new IOException("request failed on the server: " + response.error));
+                else answer.complete(response.data);
+            }
+        }
+        catch (IOException | ClassCastException e)
+        {
+            close();
+            IOException lost = new IOException("connection to the server was lost", e);
+            for(Long requestId : pending.keySet())
+            {
+                CompletableFuture<Object> answer = pending.remove(requestId);
+                if(answer != null) answer.completeExceptionally(lost);
+            }
+        }
+    }
+
+    /**
+     * @return number of requests that were sent and not answered yet
+     */
+    int getInFlight()
+    {
+        return pending.size();
+    }
+
+    /**
+     * @param idleTimeout - max idle time (ms)
+     * @return true if no request is in flight and the connection was not used for more then the given time
+     */
+    boolean isIdle(long idleTimeout)
+    {
+        return pending.isEmpty() && System.currentTimeMillis() - lastUsed > idleTimeout;
+    }
+
+    boolean isBroken()
+    {
+        return broken || socket.isClosed();
+    }
+
+    @Override
+    public void close()
+    {
+        broken = true;
+        try
+        {
+            socket.close(); // the reader thread fails the pending requests
+        }
+        catch (IOException ignored) {}
+    }
+}
@@ -1,33 +1,69 @@
 package BL.Communication;
 
 import BL.Client.ClientSystem;
+import BL.Client.NearCache;
 import BL.Server.utils.Configuration;
+import BL.Server.utils.QueryCache;
 import DL.Users.Notifiable;
 import DL.Users.Notification;
+import DL.Users.NotificationInbox;
 import DL.Users.User;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Description:     This Class Defines a CRUD Interface for communication with DB
  *                  In Addition this class will communicate with TCP to a server that holds the DB
  *
+ *                  All the requests are sent over a small pool of long lived connections (see ConnectionPool),
+ *                  requests of different threads are pipelined on the same connection
+ *
+ *                  Every operation has an async version (queryAsync, transactionAsync, ...) that returns a
+ *                  CompletableFuture completed on the client I/O executor, so the UI thread does not wait and
+ *                  independent requests run at the same time. All the requests fail after client.requestTimeout ms
+ *
+ *                  Queries go through the near cache if one is set (see NearCache), the server pushes invalidations
+ *                  and the notifications of the logged in user on the push channel (see PushChannel)
+ *
  * Operations:      * Insert (Create - CR)
  *                  * Update (U)
  *                  * Delete (D)
- *                  * Query - query the DB base on a namedQuery
+ *                  * Query - query the DB base on a namedQuery, all the rows, a single page of them
+ *                            or a stream of chunks (see QueryStream)
  *                  * Transaction - Make multiple Insert/Update/Delete requests in the same communication and
  *                                  make all of them in the same transaction (all success or nothing)
+ *                  * Query Batch - Make multiple Query requests in the same communication, the server runs all of
+ *                                  them in one read only entity manager
  **/
 public class ClientServerCommunication {
 
     private static InetAddress serverIP;
     private static final int serverPort = Integer.parseInt(Configuration.getPropertyValue("server.port"));
+    private static final int poolSize = Integer.parseInt(Configuration.getPropertyValue("client.poolSize"));
+    private static final int maxInFlight = Integer.parseInt(Configuration.getPropertyValue("client.maxInFlight"));
+    private static final int connectTimeout = Integer.parseInt(Configuration.getPropertyValue("client.connectTimeout"));
+    private static final long idleTimeout = Long.parseLong(Configuration.getPropertyValue("client.idleTimeout"));
+    private static final long requestTimeout = Long.parseLong(Configuration.getPropertyValue("client.requestTimeout"));
+    private static final int pushPort = Integer.parseInt(Configuration.getPropertyValue("push.port"));
+    private static final long pushHeartbeatInterval = Long.parseLong(Configuration.getPropertyValue("push.heartbeatInterval"));
+    private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(
+            Integer.parseInt(Configuration.getPropertyValue("client.ioThreads")), daemonThreads("client-io"));
+    private static final ScheduledExecutorService timeoutTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("client-timeout"));
 
     static {
         try {
@@ -36,61 +72,209 @@ public class ClientServerCommunication {
         }
     }
 
-    private Thread listenerThread;
-    private volatile boolean listen = true;
+    private ConnectionPool connectionPool; // created on the first request
+    private volatile NearCache nearCache;
+    private PushChannel pushChannel; // open while a user is logged in
 
     public ClientServerCommunication()
     {
-        startNotificationListener();
     }
 
-    public boolean startNotificationListener()
+    /**
+     * Open the push channel of a user that logged in - the server pushes the notifications of the user and the
+     * cache invalidations over it (see PushChannel)
+     * @param username - the logged in user
+     * @param token - the push token the user got at login, null if the server pushes nothing
+     * @return true if the channel was opened
+     */
+    public synchronized boolean subscribe(String username, String token)
     {
-        listen = true;
-        listenerThread = new Thread(() -> notificationDemon());
-        listenerThread.start();
-        System.out.println("Listening on port: " + Configuration.getPropertyValue("clientNotification.port"));
+        unsubscribe();
+        if(token == null) return false;
+        pushChannel = new PushChannel(serverIP, pushPort, username, token, connectTimeout, pushHeartbeatInterval,
+                this::onPush, this::onResync);
         return true;
     }
 
-    public void notificationDemon()
+    /**
+     * Close the push channel, the server ends the subscription
+     */
+    public synchronized void unsubscribe()
     {
-        int listenPort = Integer.parseInt(Configuration.getPropertyValue("clientNotification.port"));
-        try(ServerSocket listenSocket = new ServerSocket(listenPort))
+        if(pushChannel != null)
         {
-            // init
-            listenSocket.setSoTimeout(1000);
-            while (listen)
-            {
-                try
-                {
-                    Socket serverSocket = listenSocket.accept(); // blocking call
-                    User loggedUser = ClientSystem.getLoggedUser();
-                    if(loggedUser != null)
-                    {
-                        try(ObjectInputStream fromServer = new ObjectInputStream(serverSocket.getInputStream()))
-                        {
-                            Object objFromServer = fromServer.readObject();
-                            if(objFromServer instanceof Notification)
-                            {
-                                loggedUser.addNotification((Notification)objFromServer);
-                            }
-                        } catch (IOException e) { }
-                    }
-                }
-                catch (SocketTimeoutException e) {}
-            }
+            pushChannel.close();
+            pushChannel = null;
         }
-        catch (Exception e)
+    }
+
+    /**
+     * Stop getting pushed messages
+     */
+    public void stopListener()
+    {
+        unsubscribe();
+    }
+
+    private void onPush(Object payload)
+    {
+        User loggedUser = ClientSystem.getLoggedUser();
+        if(payload instanceof Notification && loggedUser != null)
         {
-            e.printStackTrace();
+            loggedUser.addNotification((Notification) payload);
+        }
+        else if(payload instanceof CacheInvalidation && nearCache != null)
+        {
+            nearCache.invalidate(((CacheInvalidation) payload).getTables());
         }
-        System.out.println("Notification Listener thread done");
     }
 
-    public void stopListener()
+    /**
+     * invalidations may have been missed while the channel was disconnected
+     */
+    private void onResync()
+    {
+        NearCache cache = nearCache;
+        if(cache != null) cache.invalidateAll();
+    }
+
+    /**
+     * close all the open connections to the server
+     */
+    public synchronized void closeConnections()
+    {
+        if(connectionPool != null)
+        {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
+
+    /**
+     * Send a request to the server over a pooled connection and wait for the answer
+     * @param request - request to send
+     * @return the answer of the server
+     * @throws Exception if the request could not be completed or timed out
+     */
+    private Object send(SystemRequest request) throws Exception
+    {
+        return send(request, null);
+    }
+
+    /**
+     * Send a request to the server over the connection of a channel and wait for the answer
+     * @param request - request to send
+     * @param channel - channel of the request, null for any pooled connection
+     * @return the answer of the server
+     * @throws Exception if the request could not be completed or timed out
+     */
+    private Object send(SystemRequest request, ConnectionPool.Channel channel) throws Exception
+    {
+        CompletableFuture<Object> answer = null;
+        try
+        {
+            answer = getConnectionPool().sendAsync(request, channel);
+            return answer.get(requestTimeout, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            TimeoutException timeout = new TimeoutException("no answer for request " + request.queryName + " after " + requestTimeout + "ms");
+            answer.completeExceptionally(timeout); // releases the slot of the request in the pool
+            throw timeout;
+        }
+        finally
+        {
+            afterRequest(request);
+        }
+    }
+
+    /**
+     * a write of this client may change any cached result - drop the near cache
+     */
+    private void afterRequest(SystemRequest request)
+    {
+        NearCache cache = nearCache;
+        if(cache == null) return;
+        switch (request.type)
+        {
+            case Query: case Batch: case Stream: case Fetch: case CloseStream: case QuerySpaces:
+                return;
+            default:
+                cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Send a request to the server without waiting for the answer
+     * the answer is completed on the client I/O executor, never on the connection reader thread
+     * @param request - request to send
+     * @param onFailure - result of the future if the request failed or timed out
+     * @return future of the answer of the server
+     */
+    private CompletableFuture<Object> sendAsync(SystemRequest request, Object onFailure)
+    {
+        return sendAsync(request, null, onFailure);
+    }
+
+    /**
+     * Send a request to the server over the connection of a channel without waiting for the answer
+     * @param request - request to send
+     * @param channel - channel of the request, null for any pooled connection
+     * @param onFailure - result of the future if the request failed or timed out
+     * @return future of the answer of the server
+     */
+    private CompletableFuture<Object> sendAsync(SystemRequest request, ConnectionPool.Channel channel, Object onFailure)
+    {
+        CompletableFuture<Object> answer = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            try
+            {
+                CompletableFuture<Object> sent = getConnectionPool().sendAsync(request, channel);
+                sent.whenCompleteAsync((data, error) -> {
+                    if(error != null) answer.completeExceptionally(error);
+                    else answer.complete(data);
+                }, ioExecutor);
+                // a timeout ends the request in the pool too
+                answer.whenComplete((data, error) -> { if(error != null) sent.completeExceptionally(error); });
+            }
+            catch (Exception e)
+            {
+                answer.completeExceptionally(e);
+            }
+        });
+
+        ScheduledFuture<?> timeout = timeoutTimer.schedule(() -> answer.completeExceptionally(
+                new TimeoutException("no answer for request " + request.queryName + " after " + requestTimeout + "ms")),
+                requestTimeout, TimeUnit.MILLISECONDS);
+
+        return answer.handle((data, error) -> {
+            timeout.cancel(false);
+            afterRequest(request);
+            if(error != null)
+            {
+                (error instanceof CompletionException ? error.getCause() : error).printStackTrace();
+                return onFailure;
+            }
+            return data;
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String name)
     {
-        listen = false;
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private synchronized ConnectionPool getConnectionPool()
+    {
+        if(connectionPool == null)
+        {
+            connectionPool = new ConnectionPool(serverIP, serverPort, poolSize, maxInFlight, connectTimeout, idleTimeout);
+        }
+        return connectionPool;
     }
 
     /**
@@ -103,15 +287,133 @@ public class ClientServerCommunication {
      */
     public List query(String queryName, Map<String, Object> parameters)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        return query(queryName, parameters, null);
+    }
+
+    /**
+     * Query the DB in the server and get the results with only the associations of an entity graph loaded
+     *
+     * @param queryName  - NamedQuery in persistence to query the data base
+     * @param parameters - map of parameters of the named query
+     * @param fetchGraph - name of an entity graph (@NamedEntityGraph) of the results, null to load all the
+     *                     associations. The associations that are not in the graph must not be used
+     * @return list of objects that matches the query, null if something went wrong with the
+     * connection
+     */
+    public List<?> query(String queryName, Map<String, Object> parameters, String fetchGraph)
+    {
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
+            SystemRequest request = SystemRequest.query(queryName, parameters, fetchGraph);
+            NearCache cache = nearCache;
+            if(cache != null) return cachedQuery(cache, request);
 
-            out.writeObject(new SystemRequest(SystemRequest.Type.Query, queryName, parameters));
-            out.flush();
+            List<?> answer = (List<?>) send(request);
+            return answer;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Query through the near cache, a query that is used for the first time is not cached until the server
+     * tells which tables it reads - with the tables of the associations its fetch graph loads
+     */
+    private List<?> cachedQuery(NearCache cache, SystemRequest request) throws Exception
+    {
+        String resultName = resultName(request);
+        Set<String> tables = querySpaces(cache, request, resultName);
+        QueryCache.Key key = tables == null || tables.isEmpty() ? null : cache.key(resultName, (Map<?, ?>) request.data);
+        if(key == null) return (List<?>) send(request);
+
+        long epoch = cache.epoch();
+        List<?> cached = cache.get(key);
+        if(cached != null) return cached;
+
+        List<?> answer = (List<?>) send(request);
+        if(answer != null) cache.put(key, tables, epoch, answer);
+        return answer;
+    }
+
+    /**
+     * Async version of {@link #cachedQuery(NearCache, SystemRequest)}
+     */
+    private CompletableFuture<List<?>> cachedQueryAsync(NearCache cache, SystemRequest request)
+    {
+        String resultName = resultName(request);
+        Set<String> tables = querySpaces(cache, request, resultName);
+        QueryCache.Key key = tables == null || tables.isEmpty() ? null : cache.key(resultName, (Map<?, ?>) request.data);
+        if(key == null) return sendAsync(request, null).thenApply(answer -> (List<?>) answer);
+
+        long epoch = cache.epoch();
+        List<?> cached = cache.get(key);
+        if(cached != null) return CompletableFuture.completedFuture(cached);
+
+        return sendAsync(request, null).thenApply(answer -> {
+            List<?> result = (List<?>) answer;
+            if(result != null) cache.put(key, tables, epoch, result);
+            return result;
+        });
+    }
+
+    /**
+     * @return name of the results of a query in the near cache - results loaded by different graphs are different
+     * results
+     */
+    private static String resultName(SystemRequest request)
+    {
+        return request.fetchGraph == null ? request.queryName : request.queryName + "/" + request.fetchGraph;
+    }
 
-            List answer = (List) in.readObject();
+    /**
+     * @return the tables the results of a query read, null if they are not known yet - they are asked from the
+     * server in the background
+     */
+    private Set<String> querySpaces(NearCache cache, SystemRequest request, String resultName)
+    {
+        Set<String> tables = cache.getQuerySpaces(resultName);
+        if(tables == null)
+        {
+            SystemRequest querySpacesRequest = new SystemRequest(SystemRequest.Type.QuerySpaces, request.queryName, null);
+            querySpacesRequest.fetchGraph = request.fetchGraph;
+            sendAsync(querySpacesRequest, null).thenAccept(querySpaces -> {
+                Set<String> queryTables = new HashSet<>();
+                if(querySpaces != null) for(Object table : (Set<?>) querySpaces) queryTables.add((String) table);
+                cache.setQuerySpaces(resultName, queryTables);
+            });
+        }
+        return tables;
+    }
+
+    /**
+     * @param nearCache - client side cache of query results, null to query the server every time
+     */
+    public void setNearCache(NearCache nearCache)
+    {
+        this.nearCache = nearCache;
+    }
+
+    public NearCache getNearCache()
+    {
+        return nearCache;
+    }
+
+    /**
+     * Query a single page of the results of a named query
+     *
+     * @param queryName  - NamedQuery in persistence to query the data base
+     * @param parameters - map of parameters of the named query
+     * @param firstResult - index of the first row of the page
+     * @param maxResults - max number of rows in the page
+     * @return the rows of the page, null if something went wrong with the connection
+     */
+    public List<?> queryPage(String queryName, Map<String, Object> parameters, int firstResult, int maxResults)
+    {
+        try
+        {
+            List<?> answer = (List<?>) send(SystemRequest.page(queryName, parameters, firstResult, maxResults));
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -120,6 +422,30 @@ public class ClientServerCommunication {
         return null;
     }
 
+    /**
+     * Query the DB and read the results lazily, chunk by chunk, from a cursor on the server
+     * the cursor belongs to the connection that opened it, so all the requests of the stream go over that connection
+     * the stream must be closed if it is not read to the end
+     *
+     * @param queryName  - NamedQuery in persistence to query the data base
+     * @param parameters - map of parameters of the named query
+     * @param chunkSize - number of rows in every chunk
+     * @return iterator over the results, null if something went wrong with the connection
+     */
+    public QueryStream queryStream(String queryName, Map<String, Object> parameters, int chunkSize)
+    {
+        try
+        {
+            ConnectionPool.Channel channel = new ConnectionPool.Channel();
+            QueryChunk first = (QueryChunk) send(SystemRequest.stream(queryName, parameters, chunkSize), channel);
+            if(first != null) return new QueryStream(request -> sendAsync(request, channel, null), first);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
     /**
      * Update the data base in the server base on a named query
      *
@@ -129,15 +455,9 @@ public class ClientServerCommunication {
      */
     public boolean update(String queryName, Map<String, Object> parameters)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(SystemRequest.update(queryName,parameters));
-            out.flush();
-
-            boolean answer = (boolean) in.readObject();
+            boolean answer = (boolean) send(SystemRequest.update(queryName,parameters));
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -153,15 +473,9 @@ public class ClientServerCommunication {
      */
     public boolean insert(Object toInsert)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(SystemRequest.insert(toInsert));
-            out.flush();
-
-            boolean answer = (boolean) in.readObject();
+            boolean answer = (boolean) send(SystemRequest.insert(toInsert));
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -177,15 +491,9 @@ public class ClientServerCommunication {
      */
     public boolean delete(Object toDelete)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(SystemRequest.delete(toDelete));
-            out.flush();
-
-            boolean answer = (boolean) in.readObject();
+            boolean answer = (boolean) send(SystemRequest.delete(toDelete));
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -196,15 +504,9 @@ public class ClientServerCommunication {
 
     public boolean notify(Notifiable notifiable)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(SystemRequest.notify(notifiable));
-            out.flush();
-
-            boolean answer = (boolean) in.readObject();
+            boolean answer = (boolean) send(SystemRequest.notify(notifiable));
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -215,15 +517,17 @@ public class ClientServerCommunication {
 
     public List login(String username,String password)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(SystemRequest.login(username,password));
-            out.flush();
-
-            List answer = (List) in.readObject();
+            List<?> answer = (List<?>) send(SystemRequest.login(username,password));
+            if(answer != null && !answer.isEmpty())
+            {
+                subscribe(username, ((User) answer.get(0)).getPushToken());
+                HashMap<String, Object> inboxParameters = new HashMap<>();
+                inboxParameters.put("username", username);
+                ((User) answer.get(0)).getInbox().setPageLoader((firstResult, maxResults) ->
+                        NotificationInbox.PageLoader.rows(queryPage("InboxByUser", inboxParameters, firstResult, maxResults)));
+            }
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -239,15 +543,9 @@ public class ClientServerCommunication {
      */
     public boolean merge(Object toMerge)
     {
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(SystemRequest.merge(toMerge));
-            out.flush();
-
-            boolean answer = (boolean) in.readObject();
+            boolean answer = (boolean) send(SystemRequest.merge(toMerge));
             return answer;
         } catch (Exception e) {
             e.printStackTrace();
@@ -263,18 +561,11 @@ public class ClientServerCommunication {
      */
     public boolean transaction(List<SystemRequest> requests)
     {
-        // validate no query/transaction requests
-        for(SystemRequest request : requests) if(request.type.equals(SystemRequest.Type.Query) || request.type.equals(SystemRequest.Type.Transaction) || request.type.equals(SystemRequest.Type.Login)) return false;
+        if(!isValidTransaction(requests)) return false;
 
-        try(Socket serverSocket = new Socket(serverIP,serverPort))
+        try
         {
-            ObjectOutputStream out = new ObjectOutputStream(serverSocket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(serverSocket.getInputStream());
-
-            out.writeObject(new SystemRequest(SystemRequest.Type.Transaction,"TRANSACTION",requests));
-            out.flush();
-
-            boolean answer = (boolean) in.readObject();
+            boolean answer = (boolean) send(new SystemRequest(SystemRequest.Type.Transaction,"TRANSACTION",requests));
             return answer;
         }
         catch (Exception e)
@@ -284,4 +575,143 @@ public class ClientServerCommunication {
 
         return false;
     }
+
+    /**
+     * Query the DB in the server with several named queries in a single round trip
+     * @param queries - query requests (see SystemRequest.Type.Query)
+     * @return list of the results of every query in the same order, null if one of them failed or
+     * something went wrong with the connection
+     */
+    public List<List<?>> queryBatch(List<SystemRequest> queries)
+    {
+        if(!isValidBatch(queries)) return null;
+
+        try
+        {
+            return batchResults(send(SystemRequest.batch(queries)));
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * @param answer - answer of the server to a query batch
+     * @return the results list of every query, null if the batch failed
+     */
+    private static List<List<?>> batchResults(Object answer)
+    {
+        if(answer == null) return null;
+        List<List<?>> results = new ArrayList<>();
+        for(Object result : (List<?>) answer) results.add((List<?>) result);
+        return results;
+    }
+
+    /**
+     * @param queries - requests of a query batch
+     * @return true if all the requests are query requests
+     */
+    private static boolean isValidBatch(List<SystemRequest> queries)
+    {
+        for(SystemRequest request : queries) if(!request.type.equals(SystemRequest.Type.Query)) return false;
+        return true;
+    }
+
+    /**
+     * @param requests - requests of a transaction
+     * @return true if all the requests are insert, delete, update or merge requests
+     */
+    private static boolean isValidTransaction(List<SystemRequest> requests)
+    {
+        // validate no query/transaction requests
+        for(SystemRequest request : requests) if(request.type.equals(SystemRequest.Type.Query) || request.type.equals(SystemRequest.Type.Transaction) || request.type.equals(SystemRequest.Type.Login) || request.type.equals(SystemRequest.Type.Batch) || request.type.equals(SystemRequest.Type.Stream)) return false;
+        return true;
+    }
+
+    /**
+     * Async version of {@link #query(String, Map)}
+     * @return future of the list of objects that matches the query, completed with null if something went wrong
+     */
+    public CompletableFuture<List<?>> queryAsync(String queryName, Map<String, Object> parameters)
+    {
+        return queryAsync(queryName, parameters, null);
+    }
+
+    /**
+     * Async version of {@link #query(String, Map, String)}
+     * @return future of the list of objects that matches the query, completed with null if something went wrong
+     */
+    public CompletableFuture<List<?>> queryAsync(String queryName, Map<String, Object> parameters, String fetchGraph)
+    {
+        SystemRequest request = SystemRequest.query(queryName, parameters, fetchGraph);
+        NearCache cache = nearCache;
+        if(cache == null) return sendAsync(request, null).thenApply(answer -> (List<?>) answer);
+        try
+        {
+            return cachedQueryAsync(cache, request);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Async version of {@link #update(String, Map)}
+     * @return future of true if the update completed in success, false other wise
+     */
+    public CompletableFuture<Boolean> updateAsync(String queryName, Map<String, Object> parameters)
+    {
+        return sendAsync(SystemRequest.update(queryName, parameters), false).thenApply(answer -> (Boolean) answer);
+    }
+
+    /**
+     * Async version of {@link #insert(Object)}
+     * @return future of true if the insertion completed in success, false other wise
+     */
+    public CompletableFuture<Boolean> insertAsync(Object toInsert)
+    {
+        return sendAsync(SystemRequest.insert(toInsert), false).thenApply(answer -> (Boolean) answer);
+    }
+
+    /**
+     * Async version of {@link #delete(Object)}
+     * @return future of true if the delete completed in success, false other wise
+     */
+    public CompletableFuture<Boolean> deleteAsync(Object toDelete)
+    {
+        return sendAsync(SystemRequest.delete(toDelete), false).thenApply(answer -> (Boolean) answer);
+    }
+
+    /**
+     * Async version of {@link #merge(Object)}
+     * @return future of true if the merge completed in success, false other wise
+     */
+    public CompletableFuture<Boolean> mergeAsync(Object toMerge)
+    {
+        return sendAsync(SystemRequest.merge(toMerge), false).thenApply(answer -> (Boolean) answer);
+    }
+
+    /**
+     * Async version of {@link #transaction(List)}
+     * @return future of true if all the requests are successes false other wise
+     */
+    public CompletableFuture<Boolean> transactionAsync(List<SystemRequest> requests)
+    {
+        if(!isValidTransaction(requests)) return CompletableFuture.completedFuture(false);
+        return sendAsync(new SystemRequest(SystemRequest.Type.Transaction, "TRANSACTION", requests), false).thenApply(answer -> (Boolean) answer);
+    }
+
+    /**
+     * Async version of {@link #queryBatch(List)}
+     * @return future of the results of every query in the same order, completed with null if something went wrong
+     */
+    public CompletableFuture<List<List<?>>> queryBatchAsync(List<SystemRequest> queries)
+    {
+        if(!isValidBatch(queries)) return CompletableFuture.completedFuture(null);
+        return sendAsync(SystemRequest.batch(queries), null).thenApply(ClientServerCommunication::batchResults);
+    }
 }
@@ -0,0 +1,92 @@
+package BL.Communication;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:     Counts the compression of frames by request type (see FrameCodec)
+ *                  For every type: how many frames were compressed, the bytes before and after compression,
+ *                  and the CPU time spent to compress and decompress them - used to tune wire.compressionThreshold
+ **/
+public final class CompressionStats
+{
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private CompressionStats() {}
+
+    /**
+     * @param key - request type of the frame (and direction)
+     * @param rawBytes - size of the frame before compression
+     * @param compressedBytes - size of the frame after compression
+     * @param nanos - time spent to compress the frame
+     */
+    static void recordCompression(String key, int rawBytes, int compressedBytes, long nanos)
+    {
+        Entry entry = ENTRIES.computeIfAbsent(key, k -> new Entry());
+        entry.frames.increment();
+        entry.rawBytes.add(rawBytes);
+        entry.compressedBytes.add(compressedBytes);
+        entry.compressNanos.add(nanos);
+    }
+
+    /**
+     * @param key - request type of the frame (and direction)
+     * @param nanos - time spent to decompress the frame
+     */
+    static void recordDecompression(String key, long nanos)
+    {
+        Entry entry = ENTRIES.computeIfAbsent(key, k -> new Entry());
+        entry.decompressedFrames.increment();
+        entry.decompressNanos.add(nanos);
+    }
+
+    /**
+     * @param key - request type of the frame (and direction)
+     * @return compressed size / raw size of all the compressed frames of the type, 1 if nothing was compressed
+     */
+    public static double getRatio(String key)
+    {
+        Entry entry = ENTRIES.get(key);
+        return entry == null || entry.rawBytes.sum() == 0 ? 1 : (double) entry.compressedBytes.sum() / entry.rawBytes.sum();
+    }
+
+    /**
+     * @param key - request type of the frame (and direction)
+     * @return number of frames of the type that were compressed
+     */
+    public static long getCompressedFrames(String key)
+    {
+        Entry entry = ENTRIES.get(key);
+        return entry == null ? 0 : entry.frames.sum();
+    }
+
+    /**
+     * @return a single line with the stats of every request type, empty if nothing was compressed
+     */
+    public static String snapshot()
+    {
+        StringBuilder line = new StringBuilder();
+        for(Map.Entry<String, Entry> entry : new TreeMap<>(ENTRIES).entrySet())
+        {
+            Entry stats = entry.getValue();
+            long compressed = Math.max(1, stats.frames.sum());
+            long decompressed = Math.max(1, stats.decompressedFrames.sum());
+            line.append(String.format("%s[compressed=%d ratio=%.2f avgCompress=%.3fms decompressed=%d avgDecompress=%.3fms] ",
+                    entry.getKey(), stats.frames.sum(), getRatio(entry.getKey()), stats.compressNanos.sum() / 1e6 / compressed,
+                    stats.decompressedFrames.sum(), stats.decompressNanos.sum() / 1e6 / decompressed));
+        }
+        return line.toString().trim();
+    }
+
+    private static class Entry
+    {
+        private final LongAdder frames = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder compressNanos = new LongAdder();
+        private final LongAdder decompressedFrames = new LongAdder();
+        private final LongAdder decompressNanos = new LongAdder();
+    }
+}
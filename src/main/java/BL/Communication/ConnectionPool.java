@@ -0,0 +1,214 @@
+package BL.Communication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Description:     A small pool of long lived, multiplexed connections to the server
+ *                  * Every connection carries many requests at the same time (pipelining), at most maxInFlight
+ *                    requests are in flight in the whole pool
+ *                  * A request goes to a free open connection, a new connection is opened only while all the
+ *                    open ones are busy and there are less then poolSize of them
+ *                  * A connection that failed is closed and replaced by a new one on the next request
+ *                  * The requests of a Channel all go to the connection of its first request
+ *                  * Connections that were not used for idleTimeout ms are closed by a background thread
+ **/
+class ConnectionPool
+{
+    private final InetAddress serverIP;
+    private final int serverPort;
+    private final int connectTimeout;
+    private final long idleTimeout;
+
+    private final ClientConnection[] connections;
+    private final Semaphore permits;
+    private final AtomicLong requestIds = new AtomicLong();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    /**
+     * Constructor
+     * @param serverIP - ip of the server
+     * @param serverPort - port of the server
+     * @param poolSize - max number of open connections
+     * @param maxInFlight - max number of requests waiting for an answer
+     * @param connectTimeout - max time (ms) to wait for a new connection
+     * @param idleTimeout - time (ms) after which an unused connection is closed
+     */
+    ConnectionPool(InetAddress serverIP, int serverPort, int poolSize, int maxInFlight, int connectTimeout, long idleTimeout)
+    {
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+        this.connectTimeout = connectTimeout;
+        this.idleTimeout = idleTimeout;
+        this.connections = new ClientConnection[poolSize];
+        this.permits = new Semaphore(maxInFlight, true);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionInterval = Math.max(idleTimeout / 2, 1000);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a request without waiting for the answer
+     * A request that could not be written on a reused connection (the server may have closed it) is sent again
+     * on a new connection. A request that was written is never sent twice.
+     * The slot of the request is released when the future completes - by the answer, a lost connection, or the
+     * caller completing it (e.g. when it stops waiting)
+     * @param request - request to send
+     * @return future of the data of the response
+     * @throws IOException if the request could not be sent
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    CompletableFuture<Object> sendAsync(SystemRequest request) throws IOException, InterruptedException
+    {
+        return sendAsync(request, null);
+    }
+
+    /**
+     * Send a request without waiting for the answer, on the connection of a channel
+     * The first request of a channel goes to any connection and binds the channel to it, the next requests of the
+     * channel are sent only on that connection and fail if it was closed (they are never sent on another one)
+     * @param request - request to send
+     * @param channel - channel of the request, null to send on any connection
+     * @return future of the data of the response
+     * @throws IOException if the request could not be sent
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    CompletableFuture<Object> sendAsync(SystemRequest request, Channel channel) throws IOException, InterruptedException
+    {
+        if(closed) throw new IOException("connection pool is closed");
+        request.requestId = requestIds.incrementAndGet();
+
+        permits.acquire();
+        try
+        {
+            CompletableFuture<Object> answer;
+            ClientConnection connection = channel == null ? null : channel.connection;
+            if(connection != null)
+            {
+                answer = connection.send(request);
+            }
+            else
+            {
+                connection = pickConnection();
+                try
+                {
+                    answer = connection.send(request);
+                }
+                catch (IOException e)
+                {
+                    connection = pickConnection(); // the broken connection is replaced
+                    answer = connection.send(request);
+                }
+                if(channel != null) channel.connection = connection;
+            }
+            answer.whenComplete((data, error) -> permits.release());
+            return answer;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a request over one of the pooled connections and wait for the answer
+     * @param request - request to send
+     * @return the data of the response
+     * @throws IOException if the request could not be completed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Object send(SystemRequest request) throws IOException, InterruptedException
+    {
+        try
+        {
+            return sendAsync(request).get();
+        }
+        catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return an open connection without requests in flight, a new connection if all of them are busy and the pool
+     * is not full, otherwise the least busy connection
+     * @throws IOException if a new connection is needed and can't be opened
+     */
+    private synchronized ClientConnection pickConnection() throws IOException
+    {
+        ClientConnection leastBusy = null;
+        int emptySlot = -1;
+        for(int i = 0; i < connections.length; i++)
+        {
+            ClientConnection connection = connections[i];
+            if(connection == null || connection.isBroken())
+            {
+                connections[i] = null;
+                if(emptySlot < 0) emptySlot = i;
+                continue;
+            }
+            if(connection.getInFlight() == 0) return connection;
+            if(leastBusy == null || connection.getInFlight() < leastBusy.getInFlight()) leastBusy = connection;
+        }
+
+        if(emptySlot >= 0)
+        {
+            connections[emptySlot] = new ClientConnection(serverIP, serverPort, connectTimeout);
+            return connections[emptySlot];
+        }
+        return leastBusy;
+    }
+
+    /**
+     * Description:     Requests that must reach the same connection on the server, because the server keeps their
+     *                  state per connection (e.g. the cursor of a streamed query).
+     *                  The requests of a channel are sent one after another, never concurrently
+     **/
+    static final class Channel
+    {
+        private volatile ClientConnection connection;
+    }
+
+    /**
+     * close all the connections that were not used for idleTimeout ms
+     */
+    private synchronized void evictIdleConnections()
+    {
+        for(int i = 0; i < connections.length; i++)
+        {
+            if(connections[i] != null && (connections[i].isIdle(idleTimeout) || connections[i].isBroken()))
+            {
+                connections[i].close();
+                connections[i] = null;
+            }
+        }
+    }
+
+    /**
+     * close all the connections and stop the eviction thread
+     */
+    synchronized void close()
+    {
+        closed = true;
+        evictor.shutdownNow();
+        for(int i = 0; i < connections.length; i++)
+        {
+            if(connections[i] != null) connections[i].close();
+            connections[i] = null;
+        }
+    }
+}
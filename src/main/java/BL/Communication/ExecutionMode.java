@@ -0,0 +1,44 @@
+package BL.Communication;
+
+import lombok.extern.log4j.Log4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Description:     How a server executes the work of its clients
+ *                  * FIXED - a fixed pool of poolSize platform threads, extra work waits in a queue
+ *                  * VIRTUAL - a new virtual thread for every task (connection or request)
+ *                    virtual threads exist only from java 21, on older runtimes it falls back to the FIXED pool
+ **/
+@Log4j
+public enum ExecutionMode
+{
+    FIXED,
+    VIRTUAL;
+
+    /**
+     * @param poolSize - number of threads for the FIXED mode, and for VIRTUAL when there are no virtual threads
+     * @return a new executor for this mode
+     */
+    public ExecutorService createExecutor(int poolSize)
+    {
+        if(this == FIXED)
+        {
+            return Executors.newFixedThreadPool(poolSize);
+        }
+
+        try
+        {
+            // java 21+ : Executors.newVirtualThreadPerTaskExecutor(), called by reflection to keep compiling for java 8
+            Method virtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualExecutor.invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            log.warn("virtual threads are not supported by this java version, using a fixed pool of " + poolSize + " threads");
+            return Executors.newFixedThreadPool(poolSize);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package BL.Communication;
+
+import BL.Server.utils.Configuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Description:     Translates objects to length prefixed frames and back
+ *                  Every frame is [int length][byte flags][encoded object], the length counts the flags too.
+ *                  A reader (blocking or non blocking) always knows how many bytes it needs before it can decode
+ *                  the next request or response, and which codec (see WireCodec) encoded it
+ *
+ *                  Flags:  * bits 0-5 - id of the codec
+ *                          * ACCEPTS_COMPRESSED - the sender can read compressed frames, the answer may be compressed
+ *                          * COMPRESSED - the encoded object is deflated and prefixed by its int length
+ *                  Only objects of at least wire.compressionThreshold bytes are compressed, and only if the peer
+ *                  accepts compressed frames
+ **/
+public final class FrameCodec
+{
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    public static final int COMPRESSED = 0x80;
+    public static final int ACCEPTS_COMPRESSED = 0x40;
+    private static final int CODEC_MASK = 0x3F;
+
+    private static final WireCodec[] CODECS = { new JavaSerializationCodec(), new BinaryCodec() };
+    private static WireCodec defaultCodec;
+    private static final boolean compression = Boolean.parseBoolean(Configuration.getPropertyValue("wire.compression"));
+    private static final int compressionThreshold = Integer.parseInt(Configuration.getPropertyValue("wire.compressionThreshold"));
+    /* deflaters/inflaters hold native memory - reuse them instead of one per thread (virtual threads) */
+    private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    private FrameCodec() {}
+
+    /**
+     * @return the codec set by wire.codec in config.properties (java/binary)
+     */
+    public static synchronized WireCodec getDefaultCodec()
+    {
+        if(defaultCodec == null)
+        {
+            String name = Configuration.getPropertyValue("wire.codec");
+            defaultCodec = "java".equalsIgnoreCase(name) ? CODECS[JavaSerializationCodec.ID] : CODECS[BinaryCodec.ID];
+        }
+        return defaultCodec;
+    }
+
+    /**
+     * @return true if wire.compression is on - the requests accept compressed answers, and the answers are compressed
+     * for clients that accept them
+     */
+    public static boolean isCompressionEnabled()
+    {
+        return compression;
+    }
+
+    /**
+     * @param id - id of a codec
+     * @return the codec with the given id
+     * @throws IOException if there is no such codec
+     */
+    public static WireCodec getCodec(byte id) throws IOException
+    {
+        if(id < 0 || id >= CODECS.length) throw new IOException("unknown codec: " + id);
+        return CODECS[id];
+    }
+
+    /**
+     * Write an object as a single uncompressed frame
+     * @param out - stream to write to, the caller is responsible to flush it
+     * @param object - object to write
+     * @param codec - codec to encode the object with
+     * @throws IOException if writing failed
+     */
+    public static void writeFrame(DataOutputStream out, Object object, WireCodec codec) throws IOException
+    {
+        writeFrame(out, object, codec, false, null);
+    }
+
+    /**
+     * Write an object as a single frame
+     * @param out - stream to write to, the caller is responsible to flush it
+     * @param object - object to write
+     * @param codec - codec to encode the object with
+     * @param compression - true if the peer accepts compressed frames
+     * @param statsKey - request type of the frame, for the compression stats
+     * @throws IOException if writing failed
+     */
+    public static void writeFrame(DataOutputStream out, Object object, WireCodec codec, boolean compression, String statsKey) throws IOException
+    {
+        Payload payload = encode(object, codec, compression, statsKey);
+        out.writeInt(payload.bodyLength());
+        out.writeByte(payload.flags);
+        if(payload.isCompressed()) out.writeInt(payload.rawLength);
+        out.write(payload.data);
+    }
+
+    /**
+     * Read a single frame without decoding it
+     * @param in - stream to read from
+     * @return the body of the frame - flags and encoded object
+     * @throws IOException if reading failed or the frame is invalid, EOFException if the stream was closed
+     */
+    public static byte[] readFrameBody(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        checkFrameLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    /**
+     * Read a single frame and decode it
+     * @param in - stream to read from
+     * @return the decoded object
+     * @throws IOException if reading failed or the frame is invalid, EOFException if the stream was closed
+     */
+    public static Object readFrame(DataInputStream in) throws IOException
+    {
+        return decodeBody(readFrameBody(in));
+    }
+
+    /**
+     * @param body - body of a frame (flags and encoded object)
+     * @return the codec that encoded the frame
+     * @throws IOException if the codec is unknown
+     */
+    public static WireCodec codecOf(byte[] body) throws IOException
+    {
+        return getCodec((byte) (body[0] & CODEC_MASK));
+    }
+
+    /**
+     * @param body - body of a frame (flags and encoded object)
+     * @return true if the sender of the frame can read compressed frames
+     */
+    public static boolean acceptsCompression(byte[] body)
+    {
+        return (body[0] & ACCEPTS_COMPRESSED) != 0;
+    }
+
+    /**
+     * @param body - body of a frame (flags and encoded object)
+     * @return the decoded object
+     * @throws IOException if the object can't be decoded
+     */
+    public static Object decodeBody(byte[] body) throws IOException
+    {
+        WireCodec codec = codecOf(body);
+        if((body[0] & COMPRESSED) == 0) return codec.decode(body, 1, body.length - 1);
+
+        long start = System.nanoTime();
+        byte[] raw = inflate(body);
+        long nanos = System.nanoTime() - start;
+        Object object = codec.decode(raw, 0, raw.length);
+        CompressionStats.recordDecompression(object instanceof SystemRequest ?
+                ((SystemRequest) object).type + "/request" : "response", nanos);
+        return object;
+    }
+
+    /**
+     * @param object - object to write
+     * @param codec - codec to encode the object with
+     * @return a buffer (ready to be written) that holds the whole uncompressed frame of the object
+     * @throws IOException if the object can't be encoded
+     */
+    public static ByteBuffer toFrameBuffer(Object object, WireCodec codec) throws IOException
+    {
+        return toFrameBuffer(object, codec, false, null);
+    }
+
+    /**
+     * @param object - object to write
+     * @param codec - codec to encode the object with
+     * @param compression - true if the peer accepts compressed frames
+     * @param statsKey - request type of the frame, for the compression stats
+     * @return a buffer (ready to be written) that holds the whole frame of the object
+     * @throws IOException if the object can't be encoded
+     */
+    public static ByteBuffer toFrameBuffer(Object object, WireCodec codec, boolean compression, String statsKey) throws IOException
+    {
+        Payload payload = encode(object, codec, compression, statsKey);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.bodyLength());
+        frame.putInt(payload.bodyLength());
+        frame.put((byte) payload.flags);
+        if(payload.isCompressed()) frame.putInt(payload.rawLength);
+        frame.put(payload.data);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @param length - length read from a frame header
+     * @throws IOException if the length is not a valid frame length
+     */
+    public static void checkFrameLength(int length) throws IOException
+    {
+        if(length < 1 || length > MAX_FRAME_SIZE)
+        {
+            throw new IOException("invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * encode an object and compress it if the peer accepts it, it is big enough and compression makes it smaller
+     */
+    private static Payload encode(Object object, WireCodec codec, boolean compression, String statsKey) throws IOException
+    {
+        byte[] raw = codec.encode(object);
+        int flags = codec.getId() | (compression ? ACCEPTS_COMPRESSED : 0);
+        if(compression && raw.length >= compressionThreshold)
+        {
+            long start = System.nanoTime();
+            byte[] deflated = deflate(raw);
+            CompressionStats.recordCompression(statsKey, raw.length, deflated.length, System.nanoTime() - start);
+            if(deflated.length + 4 < raw.length) return new Payload(flags | COMPRESSED, raw.length, deflated);
+        }
+        return new Payload(flags, raw.length, raw);
+    }
+
+    private static byte[] deflate(byte[] raw)
+    {
+        Deflater deflater = deflaters.poll();
+        if(deflater == null) deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished())
+            {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    /**
+     * @param body - body of a compressed frame - flags, int raw length and the deflated object
+     * @return the encoded object
+     */
+    private static byte[] inflate(byte[] body) throws IOException
+    {
+        int rawLength = ByteBuffer.wrap(body, 1, 4).getInt();
+        checkFrameLength(rawLength);
+
+        Inflater inflater = inflaters.poll();
+        if(inflater == null) inflater = new Inflater();
+        try
+        {
+            inflater.setInput(body, 5, body.length - 5);
+            byte[] raw = new byte[rawLength];
+            int count = 0;
+            while (count < rawLength && !inflater.finished())
+            {
+                int inflated = inflater.inflate(raw, count, rawLength - count);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                count += inflated;
+            }
+            if(count != rawLength) throw new IOException("corrupted compressed frame");
+            return raw;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("corrupted compressed frame", e);
+        }
+        finally
+        {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+
+    /**
+     * encoded object with its flags, data is deflated if the COMPRESSED flag is set
+     */
+    private static class Payload
+    {
+        private final int flags;
+        private final int rawLength;
+        private final byte[] data;
+
+        Payload(int flags, int rawLength, byte[] data)
+        {
+            this.flags = flags;
+            this.rawLength = rawLength;
+            this.data = data;
+        }
+
+        boolean isCompressed()
+        {
+            return (flags & COMPRESSED) != 0;
+        }
+
+        /**
+         * @return length of the frame after the header - flags, raw length if compressed and data
+         */
+        int bodyLength()
+        {
+            return 1 + (isCompressed() ? 4 : 0) + data.length;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package BL.Communication;
+
+import java.net.InetAddress;
+
+/**
+ * Description:     This class represents an interface for handling a single request of a client,
+ *                  used by servers that read and write the frames themselves (see NioServer)
+ **/
+public interface IRequestStrategy
+{
+    /**
+     * Strategy to execute for a single request
+     * @param systemRequest - request to handle
+     * @param clientAddress - address of the client that sent the request
+     * @return the answer to send back to the client
+     */
+    Object handleRequest(SystemRequest systemRequest, InetAddress clientAddress);
+
+    /**
+     * Strategy to execute for a single request of a connection
+     * @param systemRequest - request to handle
+     * @param clientAddress - address of the client that sent the request
+     * @param connection - the connection the request was read from, the same object for all of its requests
+     * @return the answer to send back to the client
+     */
+    default Object handleRequest(SystemRequest systemRequest, InetAddress clientAddress, Object connection)
+    {
+        return handleRequest(systemRequest, clientAddress);
+    }
+
+    /**
+     * Called when a connection is closed, frees what its requests kept open - may be called more than once
+     * @param connection - the connection, as given to handleRequest
+     */
+    default void connectionClosed(Object connection)
+    {
+    }
+}
@@ -0,0 +1,46 @@
+package BL.Communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Description:     Codec based on standard java serialization
+ *                  Works for every Serializable object, used as the fallback of the binary codec
+ **/
+public class JavaSerializationCodec implements WireCodec
+{
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object object) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] buffer, int offset, int length) throws IOException
+    {
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer, offset, length)))
+        {
+            return in.readObject();
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package BL.Communication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:     This class represent a non blocking server built on java.nio selectors
+ *                  * One acceptor thread accepts new clients and hands them to the I/O threads
+ *                  * A few I/O threads read and write frames (see FrameCodec) for all the connections
+ *                  * Complete requests are executed by a separate worker pool
+ *                  An idle client costs only a registered channel, so one server can hold thousands of clients
+ **/
+public class NioServer
+{
+    private int port;
+    private int listeningInterval;
+    private int ioThreads;
+    private int poolSize;
+    private ExecutionMode executionMode;
+    private IRequestStrategy requestStrategy;
+    private volatile boolean stop;
+    private ExecutorService workers;
+    private IoLoop[] ioLoops;
+
+    /**
+     * Constructor
+     * @param port - port to listen for clients
+     * @param ioThreads - number of threads reading and writing to the clients
+     * @param poolSize - number of threads executing requests
+     * @param listeningInterval - max time (ms) a selector waits before checking if the server was stopped
+     * @param requestStrategy - strategy to execute for every request
+     */
+    public NioServer(int port, int ioThreads, int poolSize, int listeningInterval, IRequestStrategy requestStrategy)
+    {
+        this(port, ioThreads, poolSize, listeningInterval, requestStrategy, ExecutionMode.FIXED);
+    }
+
+    /**
+     * Constructor
+     * @param port - port to listen for clients
+     * @param ioThreads - number of threads reading and writing to the clients
+     * @param poolSize - number of threads executing requests (FIXED mode only)
+     * @param listeningInterval - max time (ms) a selector waits before checking if the server was stopped
+     * @param requestStrategy - strategy to execute for every request
+     * @param executionMode - fixed worker pool or a virtual thread per request
+     */
+    public NioServer(int port, int ioThreads, int poolSize, int listeningInterval, IRequestStrategy requestStrategy, ExecutionMode executionMode)
+    {
+        this.port = port;
+        this.ioThreads = ioThreads;
+        this.poolSize = poolSize;
+        this.executionMode = executionMode;
+        this.listeningInterval = listeningInterval;
+        this.requestStrategy = requestStrategy;
+    }
+
+    /**
+     * Boot server in a different thread and start to listen for clients
+     */
+    public void start()
+    {
+        new Thread(this::runServer, "nio-acceptor").start();
+    }
+
+    /**
+     * main server loop - accept clients and distribute them between the I/O threads
+     */
+    private void runServer()
+    {
+        workers = executionMode.createExecutor(poolSize);
+        ioLoops = new IoLoop[ioThreads];
+
+        try(Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open())
+        {
+            for(int i = 0; i < ioThreads; i++)
+            {
+                ioLoops[i] = new IoLoop();
+                new Thread(ioLoops[i], "nio-io-" + i).start();
+            }
+
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            int next = 0;
+            while (!stop)
+            {
+                if(selector.select(listeningInterval) == 0) continue;
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isAcceptable()) continue;
+
+                    SocketChannel clientChannel = serverChannel.accept();
+                    if(clientChannel == null) continue;
+                    clientChannel.configureBlocking(false);
+                    clientChannel.socket().setTcpNoDelay(true);
+                    ioLoops[next].register(clientChannel);
+                    next = (next + 1) % ioThreads;
+                }
+            }
+
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.HOURS);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            for(IoLoop ioLoop : ioLoops) if(ioLoop != null) ioLoop.selector.wakeup();
+        }
+    }
+
+    /**
+     * Stop the server form running and shutdown
+     */
+    public void stop()
+    {
+        stop = true;
+    }
+
+    /**
+     * A single I/O thread, owns a selector and all the connections registered to it
+     * Only this thread changes the interest set of its keys, other threads post their changes to the queues
+     */
+    private class IoLoop implements Runnable
+    {
+        private final Selector selector;
+        private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+        IoLoop() throws IOException
+        {
+            selector = Selector.open();
+        }
+
+        void register(SocketChannel channel)
+        {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(NioConnection connection)
+        {
+            pendingWrites.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!stop)
+                {
+                    selector.select(listeningInterval);
+
+                    SocketChannel channel;
+                    while ((channel = newChannels.poll()) != null)
+                    {
+                        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                        key.attach(new NioConnection(channel, key, this));
+                    }
+
+                    NioConnection connection;
+                    while ((connection = pendingWrites.poll()) != null)
+                    {
+                        if(connection.key.isValid()) connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext())
+                    {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection selected = (NioConnection) key.attachment();
+                        try
+                        {
+                            if(key.isValid() && key.isReadable()) selected.read();
+                            if(key.isValid() && key.isWritable()) selected.write();
+                        }
+                        catch (IOException e)
+                        {
+                            selected.close();
+                        }
+                    }
+                }
+
+                for(SelectionKey key : selector.keys())
+                {
+                    if(key.attachment() != null) ((NioConnection) key.attachment()).close();
+                }
+                selector.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * State of a single client connection - the frame currently being read and the frames waiting to be written
+     */
+    private class NioConnection
+    {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final IoLoop ioLoop;
+        private final InetAddress clientAddress;
+        private final ByteBuffer header = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+        private ByteBuffer body;
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+
+        NioConnection(SocketChannel channel, SelectionKey key, IoLoop ioLoop) throws IOException
+        {
+            this.channel = channel;
+            this.key = key;
+            this.ioLoop = ioLoop;
+            this.clientAddress = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+        }
+
+        /**
+         * read all the available bytes, every completed frame is sent to the worker pool
+         */
+        void read() throws IOException
+        {
+            while (true)
+            {
+                if(body == null)
+                {
+                    if(channel.read(header) < 0) throw new IOException("client closed the connection");
+                    if(header.hasRemaining()) return;
+
+                    header.flip();
+                    int length = header.getInt();
+                    header.clear();
+                    FrameCodec.checkFrameLength(length);
+                    body = ByteBuffer.allocate(length);
+                }
+
+                if(body.hasRemaining() && channel.read(body) < 0) throw new IOException("client closed the connection");
+                if(body.hasRemaining()) return;
+
+                byte[] payload = body.array();
+                body = null;
+                workers.execute(() -> execute(payload));
+            }
+        }
+
+        /**
+         * decode and execute a single request, and queue its response - a request that fails is answered with
+         * its error, a payload that can't be decoded closes the connection (it has no request id to answer)
+         */
+        private void execute(byte[] payload)
+        {
+            WireCodec codec;
+            SystemRequest systemRequest;
+            try
+            {
+                codec = FrameCodec.codecOf(payload); // answer with the codec of the client
+                systemRequest = (SystemRequest) FrameCodec.decodeBody(payload);
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                close();
+                return;
+            }
+
+            boolean compression = FrameCodec.isCompressionEnabled() && FrameCodec.acceptsCompression(payload);
+            String statsKey = systemRequest.type + "/response";
+            try
+            {
+                ByteBuffer response;
+                try
+                {
+                    Object answer = requestStrategy.handleRequest(systemRequest, clientAddress, this);
+                    response = FrameCodec.toFrameBuffer(new SystemResponse(systemRequest.requestId, answer), codec,
+                            compression, statsKey);
+                }
+                catch (Exception e)
+                {
+                    e.printStackTrace();
+                    response = FrameCodec.toFrameBuffer(new SystemResponse(systemRequest.requestId, null,
+                            String.valueOf(e)), codec, compression, statsKey);
+                }
+                writeQueue.add(response);
+                ioLoop.requestWrite(this);
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                close();
+            }
+            if(!channel.isOpen()) requestStrategy.connectionClosed(this); // closed while the request was running
+        }
+
+        /**
+         * write as many queued frames as the socket accepts
+         */
+        void write() throws IOException
+        {
+            ByteBuffer frame;
+            while ((frame = writeQueue.peek()) != null)
+            {
+                channel.write(frame);
+                if(frame.hasRemaining()) return; // socket buffer is full, wait for the next OP_WRITE
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void close()
+        {
+            key.cancel();
+            try
+            {
+                channel.close();
+            }
+            catch (IOException ignored) {}
+            try
+            {
+                workers.execute(() -> requestStrategy.connectionClosed(this)); // not in the io thread
+            }
+            catch (RejectedExecutionException e)
+            {
+                requestStrategy.connectionClosed(this); // the server is stopping
+            }
+        }
+    }
+}
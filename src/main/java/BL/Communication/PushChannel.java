@@ -0,0 +1,214 @@
+package BL.Communication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Description:     The single long lived connection a logged in client keeps to the push server (see PushServer)
+ *                  A reader thread subscribes, hands every pushed payload to the consumer in order and acknowledges
+ *                  it, the client sends an ack every heartbeat interval even if nothing was pushed.
+ *                  A lost connection (or no message for 3 heartbeat intervals) is opened again with a growing
+ *                  backoff and resumed from the last handled message. Messages may be lost only if the server
+ *                  dropped them, then onResync is called so the client can drop what depends on them
+ **/
+class PushChannel implements Closeable
+{
+    private static final int MISSED_HEARTBEATS = 3;
+    private static final long MIN_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 30000;
+
+    private final InetAddress serverIP;
+    private final int port;
+    private final String username;
+    private final String token;
+    private final int connectTimeout;
+    private final long heartbeatInterval;
+    private final Consumer<Object> onMessage;
+    private final Runnable onResync;
+    private final ScheduledExecutorService heartbeats;
+    private volatile Socket socket;
+    private volatile DataOutputStream out;
+    private volatile long lastSeen; // sequence of the last handled message
+    private volatile boolean closed;
+
+    /**
+     * Constructor - starts the reader thread, it connects and subscribes in the background
+     * @param serverIP - ip of the server
+     * @param port - push port of the server
+     * @param username - the logged in user
+     * @param token - the push token the user got at login
+     * @param connectTimeout - max time (ms) to wait for the connection
+     * @param heartbeatInterval - time (ms) between two acks of the client
+     * @param onMessage - gets every pushed payload, on the reader thread
+     * @param onResync - called on every new connection (messages may have been missed while disconnected)
+     */
+    PushChannel(InetAddress serverIP, int port, String username, String token, int connectTimeout,
+                long heartbeatInterval, Consumer<Object> onMessage, Runnable onResync)
+    {
+        this.serverIP = serverIP;
+        this.port = port;
+        this.username = username;
+        this.token = token;
+        this.connectTimeout = connectTimeout;
+        this.heartbeatInterval = heartbeatInterval;
+        this.onMessage = onMessage;
+        this.onResync = onResync;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "push-channel-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(() -> send(SystemRequest.ack(lastSeen)),
+                heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        Thread reader = new Thread(this::run, "push-channel");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * connect, read until the connection is lost, and connect again until the channel is closed
+     */
+    private void run()
+    {
+        long backoff = MIN_BACKOFF;
+        while (!closed)
+        {
+            try
+            {
+                connect();
+                backoff = MIN_BACKOFF;
+                onResync.run();
+                readMessages();
+            }
+            catch (IOException e)
+            {
+                // connection lost or the server is down, reconnect
+            }
+            finally
+            {
+                closeSocket();
+            }
+
+            if(closed) break;
+            try
+            {
+                Thread.sleep(backoff);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        heartbeats.shutdownNow();
+    }
+
+    private void connect() throws IOException
+    {
+        Socket newSocket = new Socket();
+        newSocket.setTcpNoDelay(true);
+        newSocket.setKeepAlive(true);
+        newSocket.connect(new InetSocketAddress(serverIP, port), connectTimeout);
+        newSocket.setSoTimeout((int) (heartbeatInterval * MISSED_HEARTBEATS));
+        socket = newSocket;
+        out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+        if(closed || !send(SystemRequest.subscribe(username, token, lastSeen))) throw new IOException("not subscribed");
+    }
+
+    private void readMessages() throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        while (!closed)
+        {
+            PushMessage message = (PushMessage) FrameCodec.readFrame(in);
+            long sequence = message.getSequence();
+            if(sequence == PushMessage.CLOSED)
+            {
+                closed = true; // logged out, or logged in again from another client
+                return;
+            }
+            if(sequence == PushMessage.HEARTBEAT) continue;
+            if(sequence <= lastSeen) continue; // sent again after a reconnect, already handled
+
+            if(sequence > lastSeen + 1 && lastSeen > 0) onResync.run(); // the server dropped messages
+            try
+            {
+                onMessage.accept(message.getPayload());
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+            }
+            lastSeen = sequence;
+            send(SystemRequest.ack(sequence));
+        }
+    }
+
+    /**
+     * @return true if the request was written to the current connection
+     */
+    private boolean send(SystemRequest request)
+    {
+        DataOutputStream stream = out;
+        if(stream == null) return false;
+        try
+        {
+            synchronized (stream)
+            {
+                FrameCodec.writeFrame(stream, request, FrameCodec.getDefaultCodec());
+                stream.flush();
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            closeSocket(); // the reader reconnects
+            return false;
+        }
+    }
+
+    private void closeSocket()
+    {
+        Socket current = socket;
+        out = null;
+        if(current == null) return;
+        try
+        {
+            current.close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    /**
+     * @return sequence of the last handled message
+     */
+    long getLastSeen()
+    {
+        return lastSeen;
+    }
+
+    /**
+     * end the subscription on the server and stop reconnecting
+     */
+    @Override
+    public void close()
+    {
+        if(closed) return;
+        closed = true;
+        send(new SystemRequest(SystemRequest.Type.Logout, "UNSUBSCRIBE", null));
+        closeSocket();
+        heartbeats.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package BL.Communication;
+
+import java.io.Serializable;
+
+/**
+ * Description:     A message the server pushes to a client over its subscription connection (see PushServer)
+ *                  Messages of a subscription are numbered 1, 2, 3... the client acknowledges the last sequence it
+ *                  handled, and a client that reconnects gets again every message after the last one it acknowledged
+ *
+ *                  Sequences:  * HEARTBEAT (0) - no payload, sent when the connection was idle for a heartbeat interval
+ *                              * CLOSED (-1) - no payload, the subscription ended (logout, or a newer login of the
+ *                                same user) and the client must not reconnect
+ **/
+public class PushMessage implements Serializable
+{
+    public static final long HEARTBEAT = 0;
+    public static final long CLOSED = -1;
+
+    private long sequence;
+    private Object payload;
+
+    private PushMessage() {} // for the binary codec
+
+    /**
+     * Constructor
+     * @param sequence - number of the message in its subscription, or HEARTBEAT/CLOSED
+     * @param payload - pushed object (Notification, CacheInvalidation), null for HEARTBEAT/CLOSED
+     */
+    public PushMessage(long sequence, Object payload)
+    {
+        this.sequence = sequence;
+        this.payload = payload;
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public Object getPayload()
+    {
+        return payload;
+    }
+}
@@ -0,0 +1,626 @@
+package BL.Communication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:     Pushes messages (notifications, cache invalidations) to the logged in clients
+ *                  A user gets a subscription and a random token at login, its client keeps a single connection
+ *                  to push.port open (see PushChannel), subscribed by the username and that token, and all the
+ *                  messages of the user are multiplexed on it:
+ *                  * every message gets the next sequence of the subscription and stays in its outbox until the
+ *                    client acknowledges it, at most bufferSize messages are kept (the oldest are dropped)
+ *                  * flow control - at most window messages are sent and not acknowledged, the rest wait in the
+ *                    outbox, so a slow client never fills the socket of the sender
+ *                  * heartbeats - a connection that sent nothing for heartbeatInterval ms gets a heartbeat, a
+ *                    client that sent nothing (acks are its heartbeats) for 3 intervals is disconnected
+ *                  * resume - a client that reconnects tells the last sequence it handled and gets every message
+ *                    after it again, a subscription without a connection is dropped after resumeTimeout ms
+ *                  * receipts - a message may carry a callback that runs when the client acknowledges it, a message
+ *                    that is dropped or whose subscription ends never runs it
+ *                  Every connection has a reader (the acks) and a writer that sends the queue of the connection,
+ *                  publishing only queues the messages so a slow client delays no one else. At most maxConnections
+ *                  connections are served, more are closed right away (the clients retry with a backoff)
+ **/
+public class PushServer
+{
+    private static final int MISSED_HEARTBEATS = 3;
+    private static final int TOKEN_BYTES = 16;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final int port;
+    private final int listeningInterval;
+    private final long heartbeatInterval;
+    private final int window;
+    private final int bufferSize;
+    private final long resumeTimeout;
+    private final ExecutionMode executionMode;
+    private final Semaphore connections;
+    private final int maxConnections;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private ExecutorService connectionExecutor; // a reader and a writer thread per connection
+    private ScheduledExecutorService heartbeats;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean stop;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder resent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder heartbeatsSent = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    /**
+     * Constructor
+     * @param port - port to listen for the push connections of the clients
+     * @param listeningInterval - interval (ms) to check if the server was stopped
+     * @param heartbeatInterval - max time (ms) a connection may be idle
+     * @param window - max number of messages sent to a client and not acknowledged
+     * @param bufferSize - max number of messages kept for a client until it acknowledges them
+     * @param resumeTimeout - time (ms) a subscription is kept after its connection was lost
+     * @param executionMode - threads of the connections (see ExecutionMode)
+     * @param maxConnections - max number of connections served at the same time
+     */
+    public PushServer(int port, int listeningInterval, long heartbeatInterval, int window, int bufferSize, long resumeTimeout,
+                      ExecutionMode executionMode, int maxConnections)
+    {
+        this.port = port;
+        this.listeningInterval = listeningInterval;
+        this.heartbeatInterval = heartbeatInterval;
+        this.window = window;
+        this.bufferSize = bufferSize;
+        this.resumeTimeout = resumeTimeout;
+        this.executionMode = executionMode;
+        this.maxConnections = maxConnections;
+        this.connections = new Semaphore(maxConnections);
+    }
+
+    /**
+     * Listen for push connections in a different thread and start sending heartbeats
+     */
+    public void start()
+    {
+        connectionExecutor = executionMode.createExecutor(2 * maxConnections);
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "push-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        Thread acceptor = new Thread(this::runServer, "push-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Stop listening and close all the connections, the subscriptions are kept
+     */
+    public void stop()
+    {
+        stop = true;
+        if(heartbeats != null) heartbeats.shutdownNow();
+        for(Subscription subscription : subscriptions.values()) subscription.detach(null);
+    }
+
+    private void runServer()
+    {
+        try(ServerSocket listenSocket = new ServerSocket(port))
+        {
+            serverSocket = listenSocket;
+            listenSocket.setSoTimeout(listeningInterval);
+            while (!stop)
+            {
+                try
+                {
+                    Socket clientSocket = listenSocket.accept(); // blocking call
+                    if(!connections.tryAcquire())
+                    {
+                        refused.increment();
+                        clientSocket.close();
+                        continue;
+                    }
+                    connectionExecutor.execute(() -> {
+                        try
+                        {
+                            handleConnection(clientSocket);
+                        }
+                        finally
+                        {
+                            connections.release();
+                        }
+                    });
+                }
+                catch (SocketTimeoutException e) {}
+            }
+            connectionExecutor.shutdownNow();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the port the server listens on, the actual port if it was created with port 0
+     */
+    public int getPort()
+    {
+        ServerSocket listenSocket = serverSocket;
+        return listenSocket == null ? port : listenSocket.getLocalPort();
+    }
+
+    /**
+     * Start a new subscription for a user that logged in, a previous subscription of the user is closed
+     * @param username - the user
+     * @return the token of the subscription, only a client that knows it can subscribe
+     */
+    public String open(String username)
+    {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for(byte b : bytes) token.append(String.format("%02x", b));
+
+        Subscription previous = subscriptions.put(username, new Subscription(username, token.toString()));
+        if(previous != null) previous.close();
+        return token.toString();
+    }
+
+    /**
+     * End the subscription of a user that logged out
+     * @param username - the user
+     * @return true if the user had a subscription
+     */
+    public boolean close(String username)
+    {
+        Subscription subscription = subscriptions.remove(username);
+        if(subscription == null) return false;
+        subscription.close();
+        return true;
+    }
+
+    /**
+     * @param username - the user
+     * @return true if the user has a subscription (the message of publish is delivered if the client reconnects
+     * within resumeTimeout ms)
+     */
+    public boolean isSubscribed(String username)
+    {
+        return subscriptions.containsKey(username);
+    }
+
+    /**
+     * Push a message to the client of a user
+     * @param username - the user
+     * @param payload - message to push
+     * @return true if the user has a subscription and the message was added to it
+     */
+    public boolean publish(String username, Object payload)
+    {
+        return publish(username, payload, null);
+    }
+
+    /**
+     * Push a message to the client of a user and get a receipt when the client acknowledges it
+     * @param username - the user
+     * @param payload - message to push
+     * @param onAck - runs on the reader thread of the connection when the client acknowledged the message, it
+     *              should only hand the receipt to another thread. Never runs if the message is dropped (the outbox
+     *              is full or the subscription ends before the client acknowledged it)
+     * @return true if the user has a subscription and the message was added to it
+     */
+    public boolean publish(String username, Object payload, Runnable onAck)
+    {
+        Subscription subscription = subscriptions.get(username);
+        if(subscription == null) return false;
+        subscription.publish(payload, onAck);
+        return true;
+    }
+
+    /**
+     * Push a message to the clients of all the users that have a subscription
+     * @param payload - message to push
+     */
+    public void broadcast(Object payload)
+    {
+        for(Subscription subscription : subscriptions.values()) subscription.publish(payload, null);
+    }
+
+    /**
+     * read the subscribe request of a new connection, then the acks of the client until the connection is lost
+     * the writer of the connection runs in another thread
+     */
+    private void handleConnection(Socket socket)
+    {
+        Subscription subscription = null;
+        Connection connection = null;
+        try
+        {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout((int) (heartbeatInterval * MISSED_HEARTBEATS));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            connection = new Connection(socket);
+            connectionExecutor.execute(connection::writeMessages);
+
+            Object first = FrameCodec.readFrame(in);
+            if(!(first instanceof SystemRequest) || ((SystemRequest) first).type != SystemRequest.Type.Subscribe)
+            {
+                return;
+            }
+            SystemRequest subscribe = (SystemRequest) first;
+            Map<?, ?> parameters = (Map<?, ?>) subscribe.data;
+            Subscription subscribed = subscriptions.get(subscribe.queryName);
+            if(subscribed == null || !subscribed.isToken((String) parameters.get("token")))
+            {
+                // the user is not logged in (or logged in again from another client)
+                connection.send(new PushMessage(PushMessage.CLOSED, null));
+                connection.close();
+                return;
+            }
+            subscription = subscribed;
+            runAll(subscription.attach(connection, ((Number) parameters.get("lastSeen")).longValue()));
+
+            while (!stop)
+            {
+                Object frame = FrameCodec.readFrame(in);
+                if(!(frame instanceof SystemRequest)) break;
+                SystemRequest request = (SystemRequest) frame;
+                if(request.type == SystemRequest.Type.Ack)
+                {
+                    runAll(subscription.ack(((Number) request.data).longValue()));
+                }
+                else if(request.type == SystemRequest.Type.Logout)
+                {
+                    if(subscriptions.remove(subscription.username, subscription)) subscription.close();
+                    break;
+                }
+            }
+        }
+        catch (SocketTimeoutException e)
+        {
+            timeouts.increment(); // no ack nor heartbeat from the client
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // connection lost (or a malformed subscribe), the client reconnects and resumes
+        }
+        finally
+        {
+            if(subscription != null) subscription.detach(connection);
+            if(connection != null) connection.abort(); // nothing if it is closing after its last message
+            else closeSocket(socket);
+        }
+    }
+
+    /**
+     * run the receipts of the acknowledged messages, outside the lock of their subscription
+     */
+    private static void runAll(List<Runnable> receipts)
+    {
+        for(Runnable receipt : receipts)
+        {
+            try
+            {
+                receipt.run();
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void closeSocket(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    /**
+     * send a heartbeat on every idle connection and drop the subscriptions that were not resumed in time
+     */
+    private void heartbeat()
+    {
+        long now = System.currentTimeMillis();
+        for(Subscription subscription : subscriptions.values())
+        {
+            if(subscription.isExpired(now))
+            {
+                subscriptions.remove(subscription.username, subscription);
+                continue;
+            }
+            subscription.heartbeat(now);
+        }
+    }
+
+    /**
+     * Description:     The output side of a single push connection - a queue of messages and the thread that writes
+     *                  them. The queue holds at most window messages of the subscription, a heartbeat and a CLOSED
+     **/
+    private static class Connection
+    {
+        private static final PushMessage END = new PushMessage(PushMessage.CLOSED, null); // stops the writer
+
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<PushMessage> queue = new LinkedBlockingQueue<>();
+        private volatile long lastWrite = System.currentTimeMillis();
+        private volatile boolean closing;
+
+        private Connection(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * queue a message, it is written by the writer of the connection
+         */
+        private void send(PushMessage message)
+        {
+            if(!closing) queue.add(message);
+        }
+
+        /**
+         * write the queued messages until the connection is closed, the stream is flushed when the queue is empty
+         */
+        private void writeMessages()
+        {
+            try
+            {
+                while (true)
+                {
+                    PushMessage message = queue.take();
+                    if(message == END) break;
+                    FrameCodec.writeFrame(out, message, FrameCodec.getDefaultCodec());
+                    if(queue.isEmpty()) out.flush();
+                    lastWrite = System.currentTimeMillis();
+                }
+                out.flush();
+            }
+            catch (IOException | InterruptedException e)
+            {
+                // lost - the reader fails too and detaches the connection
+            }
+            finally
+            {
+                closeSocket(socket);
+            }
+        }
+
+        /**
+         * close after the queued messages were written
+         */
+        private void close()
+        {
+            if(closing) return;
+            closing = true;
+            queue.add(END);
+        }
+
+        /**
+         * close now, the queued messages are dropped (the subscription sends them again on the next connection)
+         * nothing if the connection is already closing after its last messages
+         */
+        private void abort()
+        {
+            if(closing) return;
+            closing = true;
+            queue.clear();
+            queue.add(END);
+            closeSocket(socket);
+        }
+    }
+
+    /**
+     * Description:     The messages of a single user - sent, waiting to be sent and waiting to be acknowledged
+     **/
+    private class Subscription
+    {
+        private final String username;
+        private final byte[] token;
+        private final ArrayDeque<PushMessage> outbox = new ArrayDeque<>(); // not acknowledged, ordered by sequence
+        private final Map<Long, Runnable> receipts = new HashMap<>(); // sequence -> runs when it is acknowledged
+        private long nextSequence = 1;
+        private long sentUpTo; // last sequence written to the current connection
+        private long acked;
+        private long highestSent; // last sequence written to any connection
+        private Connection connection;
+        private long detachedSince = System.currentTimeMillis();
+        private boolean closed;
+
+        private Subscription(String username, String token)
+        {
+            this.username = username;
+            this.token = token.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private boolean isToken(String candidate)
+        {
+            return candidate != null && MessageDigest.isEqual(token, candidate.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private synchronized void publish(Object payload, Runnable onAck)
+        {
+            if(closed) return;
+            if(onAck != null) receipts.put(nextSequence, onAck);
+            outbox.add(new PushMessage(nextSequence++, payload));
+            published.increment();
+            if(outbox.size() > bufferSize)
+            {
+                // the client finds the gap in the sequences when it gets the next message
+                long lost = outbox.poll().getSequence();
+                receipts.remove(lost);
+                acked = Math.max(acked, lost);
+                dropped.increment();
+            }
+            flush();
+        }
+
+        /**
+         * use a new connection of the client, the messages after lastSeen are sent again
+         * @return the receipts of the messages up to lastSeen
+         */
+        private synchronized List<Runnable> attach(Connection newConnection, long lastSeen)
+        {
+            if(connection != null) connection.abort();
+            if(closed)
+            {
+                newConnection.close();
+                return new ArrayList<>();
+            }
+            if(lastSeen >= nextSequence)
+            {
+                // the client saw sequences of an older subscription, continue after them
+                nextSequence = lastSeen + 1;
+                highestSent = lastSeen;
+                outbox.clear();
+                receipts.clear();
+            }
+            if(lastSeen > 0) resumes.increment();
+            connection = newConnection;
+            acked = Math.max(acked, lastSeen);
+            List<Runnable> acknowledged = removeAcked();
+            sentUpTo = acked;
+            flush();
+            return acknowledged;
+        }
+
+        /**
+         * @param lost - the connection that was lost, null for any connection
+         */
+        private synchronized void detach(Connection lost)
+        {
+            if(connection == null || (lost != null && connection != lost)) return; // already replaced
+            connection.abort();
+            connection = null;
+            detachedSince = System.currentTimeMillis();
+        }
+
+        /**
+         * @return the receipts of the acknowledged messages
+         */
+        private synchronized List<Runnable> ack(long sequence)
+        {
+            if(sequence <= acked) return new ArrayList<>();
+            acked = Math.min(sequence, sentUpTo);
+            List<Runnable> acknowledged = removeAcked();
+            flush();
+            return acknowledged;
+        }
+
+        /**
+         * @return the receipts of the removed messages
+         */
+        private List<Runnable> removeAcked()
+        {
+            List<Runnable> acknowledged = new ArrayList<>();
+            while (!outbox.isEmpty() && outbox.peek().getSequence() <= acked)
+            {
+                Runnable receipt = receipts.remove(outbox.poll().getSequence());
+                if(receipt != null) acknowledged.add(receipt);
+            }
+            return acknowledged;
+        }
+
+        /**
+         * queue the waiting messages that fit in the window on the connection
+         */
+        private void flush()
+        {
+            if(connection == null) return;
+            for(PushMessage message : outbox)
+            {
+                if(message.getSequence() - acked > window) break;
+                if(message.getSequence() <= sentUpTo) continue;
+                connection.send(message);
+                sentUpTo = message.getSequence();
+                if(sentUpTo <= highestSent) resent.increment();
+                else sent.increment();
+                highestSent = Math.max(highestSent, sentUpTo);
+            }
+        }
+
+        private synchronized void heartbeat(long now)
+        {
+            if(connection == null || !connection.queue.isEmpty() || now - connection.lastWrite < heartbeatInterval) return;
+            connection.send(new PushMessage(PushMessage.HEARTBEAT, null));
+            heartbeatsSent.increment();
+        }
+
+        private synchronized boolean isExpired(long now)
+        {
+            return connection == null && now - detachedSince > resumeTimeout;
+        }
+
+        /**
+         * end the subscription, its client is told not to reconnect
+         */
+        private synchronized void close()
+        {
+            closed = true;
+            outbox.clear();
+            receipts.clear();
+            if(connection == null) return;
+            connection.send(new PushMessage(PushMessage.CLOSED, null));
+            connection.close();
+            connection = null;
+        }
+
+        private synchronized boolean isConnected()
+        {
+            return connection != null;
+        }
+
+        private synchronized int waiting()
+        {
+            return outbox.size();
+        }
+    }
+
+    /**
+     * @return a single line with all the counters
+     */
+    public String snapshot()
+    {
+        int connected = 0;
+        long waiting = 0;
+        for(Subscription subscription : subscriptions.values())
+        {
+            if(subscription.isConnected()) connected++;
+            waiting += subscription.waiting();
+        }
+        return String.format("push subscriptions=%d connected=%d connections=%d waiting=%d published=%d sent=%d resent=%d " +
+                        "dropped=%d heartbeats=%d resumes=%d timeouts=%d refused=%d",
+                subscriptions.size(), connected, maxConnections - connections.availablePermits(), waiting,
+                published.sum(), sent.sum(), resent.sum(), dropped.sum(), heartbeatsSent.sum(), resumes.sum(),
+                timeouts.sum(), refused.sum());
+    }
+}
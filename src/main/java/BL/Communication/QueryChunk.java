@@ -0,0 +1,45 @@
+package BL.Communication;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Description:     A single chunk of rows of a streamed query (see SystemRequest.Type.Stream)
+ *                  The client asks for the next chunk of the same cursor until it gets the last one
+ **/
+public class QueryChunk implements Serializable
+{
+    private long cursorId;
+    private List<?> rows;
+    private boolean last;
+
+    private QueryChunk() {} // for the binary codec
+
+    /**
+     * Constructor
+     * @param cursorId - id of the server cursor, used to fetch the next chunk
+     * @param rows - rows of this chunk
+     * @param last - true if there are no more rows, the server already closed the cursor
+     */
+    public QueryChunk(long cursorId, List<?> rows, boolean last)
+    {
+        this.cursorId = cursorId;
+        this.rows = rows;
+        this.last = last;
+    }
+
+    public long getCursorId()
+    {
+        return cursorId;
+    }
+
+    public List<?> getRows()
+    {
+        return rows;
+    }
+
+    public boolean isLast()
+    {
+        return last;
+    }
+}
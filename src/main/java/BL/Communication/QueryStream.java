@@ -0,0 +1,85 @@
+package BL.Communication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Description:     Lazily consumed rows of a streamed query
+ *                  Rows are fetched chunk by chunk from a server cursor, the next chunk is requested as soon as
+ *                  the current one arrives, so at most two chunks are held by the client.
+ *                  Close the stream if it is not consumed to the end, to free the cursor on the server
+ **/
+public class QueryStream implements Iterator<Object>, AutoCloseable
+{
+    private final Function<SystemRequest, CompletableFuture<Object>> sender;
+    private Iterator<?> rows;
+    private QueryChunk chunk;
+    private CompletableFuture<Object> nextChunk;
+
+    /**
+     * Constructor
+     * @param sender - sends a request to the server and returns the future of the answer
+     * @param first - the first chunk of the stream
+     */
+    QueryStream(Function<SystemRequest, CompletableFuture<Object>> sender, QueryChunk first)
+    {
+        this.sender = sender;
+        accept(first);
+    }
+
+    private void accept(QueryChunk chunk)
+    {
+        this.chunk = chunk;
+        this.rows = chunk.getRows().iterator();
+        this.nextChunk = chunk.isLast() ? null : sender.apply(new SystemRequest(SystemRequest.Type.Fetch, "FETCH", chunk.getCursorId()));
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!rows.hasNext())
+        {
+            if(nextChunk == null) return false;
+            Object answer = nextChunk.join();
+            if(!(answer instanceof QueryChunk))
+            {
+                nextChunk = null;
+                throw new UncheckedIOException(new IOException("fetching the next rows of the query failed"));
+            }
+            accept((QueryChunk) answer);
+        }
+        return true;
+    }
+
+    @Override
+    public Object next()
+    {
+        if(!hasNext()) throw new NoSuchElementException();
+        return rows.next();
+    }
+
+    /**
+     * close the cursor on the server if the stream was not consumed to the end
+     */
+    @Override
+    public void close()
+    {
+        CompletableFuture<Object> pending = nextChunk;
+        nextChunk = null;
+        rows = Collections.emptyIterator();
+        if(pending == null) return; // the last chunk arrived, the server already closed the cursor
+
+        long cursorId = chunk.getCursorId();
+        pending.thenAccept(answer -> {
+            if(answer instanceof QueryChunk && !((QueryChunk) answer).isLast())
+            {
+                sender.apply(new SystemRequest(SystemRequest.Type.CloseStream, "CLOSE", cursorId));
+            }
+        });
+    }
+}
@@ -9,7 +9,6 @@ import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static java.net.InetAddress.getLocalHost;
@@ -24,6 +23,7 @@ public class Server {
     private volatile boolean stop;
     private ExecutorService threadPoolExecutor;
     private int poolSize;
+    private ExecutionMode executionMode;
 
     public static void main(String[] args)
     {
@@ -42,11 +42,25 @@ public class Server {
      * @param serverStrategy - strategy to execute
      */
     public Server(int port,int poolSize , int listeningInterval, IServerStrategy serverStrategy)
+    {
+        this(port, poolSize, listeningInterval, serverStrategy, ExecutionMode.FIXED);
+    }
+
+    /**
+     * Constructor
+     * @param port - port to listen for clients
+     * @param poolSize - number of threads handling the server (FIXED mode only)
+     * @param listeningInterval - interval before TimeOut
+     * @param serverStrategy - strategy to execute
+     * @param executionMode - fixed thread pool or a virtual thread per client
+     */
+    public Server(int port,int poolSize , int listeningInterval, IServerStrategy serverStrategy, ExecutionMode executionMode)
     {
         this.port = port;
         this.listeningInterval = listeningInterval;
         this.serverStrategy = serverStrategy;
         this.poolSize = poolSize;
+        this.executionMode = executionMode;
     }
 
     /**
@@ -70,7 +84,7 @@ public class Server {
     {
         try
         {
-            threadPoolExecutor = Executors.newFixedThreadPool(poolSize);
+            threadPoolExecutor = executionMode.createExecutor(poolSize);
 
             // init
             ServerSocket serverSocket = new ServerSocket(port);
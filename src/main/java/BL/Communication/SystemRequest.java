@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,18 +15,28 @@ import java.util.Map;
  * <p>
  * Types:           * Delete - delete object form the DB * Insert - insert object into the DB *
  * Update - update objects from the DB base on a query * Query - query the DB for info base on a
- * query
+ * query * Batch - run a list of Query requests together and get a list of their results *
+ * Stream - query the DB and get the results in chunks (see QueryChunk) * Fetch - get the next
+ * chunk of a stream * CloseStream - stop a stream before its last chunk * QuerySpaces - get the
+ * tables a named query reads (for the client near cache) * Subscribe - open the push channel of a
+ * logged in user (see PushServer) * Ack - acknowledge the pushed messages up to a sequence, also the
+ * heartbeat of the client
  **/
 public class SystemRequest implements Serializable
 {
     public enum Type
     {
-        Delete,Insert,Update,Query,Transaction,Login,Logout,Notify,Merge
+        Delete,Insert,Update,Query,Transaction,Login,Logout,Notify,Merge,Batch,Stream,Fetch,CloseStream,QuerySpaces,
+        Subscribe,Ack
     }
 
     public final Type type;
     public String queryName;
     public Object data;
+    public long requestId; // set by the connection that sends the request
+    public int firstResult; // paging of a Query - index of the first row
+    public int maxResults; // paging of a Query - max number of rows, chunk size of a Stream (0 - no limit)
+    public String fetchGraph; // entity graph of the associations a Query loads (null - all of them)
 
     /**
      * Constructor for UPDATE/QUERY
@@ -73,7 +84,52 @@ public class SystemRequest implements Serializable
         return new SystemRequest(Type.Update,queryName,parameters);
     }
 
-    public static Object login(String username, String password)
+    /**
+     * Generate A Query Request for a single page of the results
+     * @param queryName - query name to execute
+     * @param parameters - parameters of the query
+     * @param firstResult - index of the first row of the page
+     * @param maxResults - max number of rows in the page
+     * @return SystemRequest to query a page of the results
+     */
+    public static SystemRequest page(String queryName, Map<String,Object> parameters, int firstResult, int maxResults)
+    {
+        SystemRequest request = new SystemRequest(Type.Query,queryName,parameters);
+        request.firstResult = firstResult;
+        request.maxResults = maxResults;
+        return request;
+    }
+
+    /**
+     * Generate A Query Request that loads only the associations of an entity graph
+     * @param queryName - query name to execute
+     * @param parameters - parameters of the query
+     * @param fetchGraph - name of an entity graph (@NamedEntityGraph), the other associations of the results are
+     *                   not loaded and must not be used
+     * @return SystemRequest to query the results with the given graph
+     */
+    public static SystemRequest query(String queryName, Map<String,Object> parameters, String fetchGraph)
+    {
+        SystemRequest request = new SystemRequest(Type.Query,queryName,parameters);
+        request.fetchGraph = fetchGraph;
+        return request;
+    }
+
+    /**
+     * Generate A Stream Request
+     * @param queryName - query name to execute
+     * @param parameters - parameters of the query
+     * @param chunkSize - number of rows in every chunk
+     * @return SystemRequest to open a cursor on the query and get its first chunk
+     */
+    public static SystemRequest stream(String queryName, Map<String,Object> parameters, int chunkSize)
+    {
+        SystemRequest request = new SystemRequest(Type.Stream,queryName,parameters);
+        request.maxResults = chunkSize;
+        return request;
+    }
+
+    public static SystemRequest login(String username, String password)
     {
         HashMap parameters = new HashMap();
         parameters.put("username",username);
@@ -95,6 +151,31 @@ public class SystemRequest implements Serializable
         catch (Exception e){}
     }
 
+    /**
+     * Generate A Subscribe Request, the first request on a push connection
+     * @param username - the logged in user
+     * @param token - the push token the user got at login
+     * @param lastSeen - sequence of the last pushed message the client handled, 0 if none
+     * @return SystemRequest to get the messages pushed to the user after lastSeen
+     */
+    public static SystemRequest subscribe(String username, String token, long lastSeen)
+    {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("token", token);
+        parameters.put("lastSeen", lastSeen);
+        return new SystemRequest(Type.Subscribe,username,parameters);
+    }
+
+    /**
+     * Generate An Ack Request
+     * @param sequence - sequence of the last pushed message the client handled
+     * @return SystemRequest to acknowledge every pushed message up to the sequence
+     */
+    public static SystemRequest ack(long sequence)
+    {
+        return new SystemRequest(Type.Ack,"ACK",sequence);
+    }
+
     /**
      * Generate A merge Request
      * @param data - data to merge into the DB
@@ -104,4 +185,14 @@ public class SystemRequest implements Serializable
     {
         return new SystemRequest(Type.Merge,"INSERT",data);
     }
-}
\ No newline at end of file
+
+    /**
+     * Generate A read Batch Request
+     * @param queries - Query requests to run together
+     * @return SystemRequest to run all the given queries in a single round trip
+     */
+    public static SystemRequest batch(List<SystemRequest> queries)
+    {
+        return new SystemRequest(Type.Batch,"BATCH",queries);
+    }
+}
@@ -0,0 +1,39 @@
+package BL.Communication;
+
+import java.io.Serializable;
+
+/**
+ * Description:     Represents an answer from the server to a single SystemRequest
+ *                  The requestId is copied from the request so the client can match the answer
+ *                  to the request that was sent over the same connection.
+ *                  A request that failed on the server is answered with its error, so the client doesn't wait for it
+ **/
+public class SystemResponse implements Serializable
+{
+    public final long requestId;
+    public final Object data;
+    public final String error; // null if the request was handled
+
+    /**
+     * Constructor
+     * @param requestId - id of the request this response answers
+     * @param data - the result of the request (List for queries, Boolean for updates)
+     */
+    public SystemResponse(long requestId, Object data)
+    {
+        this(requestId, data, null);
+    }
+
+    /**
+     * Constructor
+     * @param requestId - id of the request this response answers
+     * @param data - the result of the request, null if it failed
+     * @param error - why the request failed, null if it was handled
+     */
+    public SystemResponse(long requestId, Object data, String error)
+    {
+        this.requestId = requestId;
+        this.data = data;
+        this.error = error;
+    }
+}
@@ -0,0 +1,31 @@
+package BL.Communication;
+
+import java.io.IOException;
+
+/**
+ * Description:     This class represents an interface for translating requests and responses to bytes and back
+ *                  The id of the codec is written in every frame, so each side can decode frames of any known codec
+ **/
+public interface WireCodec
+{
+    /**
+     * @return unique id of the codec, written in the frame header
+     */
+    byte getId();
+
+    /**
+     * @param object - object to encode
+     * @return the encoded bytes
+     * @throws IOException if the object can't be encoded
+     */
+    byte[] encode(Object object) throws IOException;
+
+    /**
+     * @param buffer - buffer that holds the bytes created by encode
+     * @param offset - start of the encoded bytes in the buffer
+     * @param length - number of encoded bytes
+     * @return the decoded object
+     * @throws IOException if the bytes can't be decoded
+     */
+    Object decode(byte[] buffer, int offset, int length) throws IOException;
+}
@@ -1,35 +1,135 @@
 package BL.Server;
 
+import BL.Communication.CacheInvalidation;
+import BL.Communication.PushServer;
 import BL.Server.utils.Configuration;
 import BL.Server.utils.DB;
+import BL.Server.utils.TopicIndex;
+import DL.Users.InboxNotification;
 import DL.Users.Notifiable;
 import DL.Users.Notification;
+import DL.Users.NotificationInbox;
 import DL.Users.User;
+import lombok.extern.log4j.Log4j;
 
-import java.io.ObjectOutputStream;
-import java.net.InetAddress;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Description:     X
- * ID:              X
+ * Description:     Saves the notifications of the users and sends them to the subscribed clients
+ *                  A notification is delivered in the background - notify only queues it (up to
+ *                  notification.queueCapacity notifications wait), a dispatcher thread finds its users and hands
+ *                  them to notification.workers delivery threads, db.batchSize users at a time. A delivery inserts the
+ *                  inbox rows of its users in a single JDBC batch (see InboxNotification), the User entities are
+ *                  not written. The notification is pushed to the users that are logged in over their push channel
+ *                  (see PushServer) and marked read for a user once its client acknowledged it - the receipts are
+ *                  written in the background, one update per notification. The others get it on their next login
+ *                  Notifications of the same topic (the events of a match) are coalesced - every user gets a single
+ *                  digest of them every notification.coalesceWindow ms, urgent ones (a goal, the end of the match)
+ *                  are delivered right away after the digest of the earlier ones. Up to notification.digestCapacity
+ *                  digests wait, when they are full all of them are delivered early
+ *                  The users of a notification with topics (see Notifiable.getTopics) are the subscribers of its
+ *                  topics in the topic index, its own list of users (and the entities it holds) is used only when
+ *                  there is no index or the subscribers could not be read
  **/
+@Log4j(topic = "event")
 public class NotificationUnit
 {
 
-    private Map<String, InetAddress> subscribedUsers; //holds InetAddress port that we decided
-    private final int clientPort = Integer
-            .parseInt(Configuration.getPropertyValue("clientNotification.port"));
+    private volatile PushServer pushServer; // null - nothing is pushed
+    private volatile TopicIndex topicIndex; // null - the users are given by the notifications
+    private final int workers = Integer
+            .parseInt(Configuration.getPropertyValue("notification.workers"));
+    private final int deliveryBatch = Integer
+            .parseInt(Configuration.getPropertyValue("db.batchSize"));
+    private static final int DELIVERIES_PER_WORKER = 64;
+    private final long coalesceWindow = Long
+            .parseLong(Configuration.getPropertyValue("notification.coalesceWindow"));
+    private final int digestCapacity = Integer
+            .parseInt(Configuration.getPropertyValue("notification.digestCapacity"));
+    /* topic -> username -> the notifications of the topic the user will get in the next digest */
+    private final Map<String, Map<String, Digest>> digests = new HashMap<>();
+    private int pendingDigests; // number of digests of all the topics, guarded by digests
+
+    /* queued notifications, handed to the delivery workers one by one */
+    private final ThreadPoolExecutor dispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Integer.parseInt(Configuration.getPropertyValue("notification.queueCapacity"))),
+            runnable -> {
+                Thread thread = new Thread(runnable, "notification-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final AtomicInteger deliveryThreads = new AtomicInteger();
+    /* delivers a notification to a single user */
+    private final ThreadPoolExecutor deliveryWorkers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "notification-delivery-" + deliveryThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    /* deliveries (of up to deliveryBatch users) handed to the workers and not done yet, the dispatcher waits while
+     * there are too many */
+    private final Semaphore pendingDeliveries = new Semaphore(workers * DELIVERIES_PER_WORKER);
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unresolved = new LongAdder(); // notifications whose users could not be found
+    private final LongAdder digestOverflows = new LongAdder(); // the digests were full and delivered early
+    private final LongAdder delayedFlushes = new LongAdder(); // the queue was full when the digests were due
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder deliveryFailures = new LongAdder();
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder digestsSent = new LongAdder();
+    private final LongAdder deliveryLatencyNanos = new LongAdder();
+    private final AtomicLong maxDeliveryLatencyNanos = new AtomicLong();
+
+    /* notification id -> the users whose clients acknowledged it and were not marked read yet, guarded by itself */
+    private final Map<Long, List<String>> receipts = new HashMap<>();
+    private final ExecutorService receiptWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notification-receipts");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private Map<String, Notifiable> updateNotifiablesMap; //maps update queries to their notifiable object
+    private final ExecutorService invalidationSender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-invalidation-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public NotificationUnit()
     {
-        this.subscribedUsers = new HashMap<>();
         this.updateNotifiablesMap = new HashMap<>();
+        if(coalesceWindow > 0)
+        {
+            ScheduledExecutorService digestSender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "notification-digests");
+                thread.setDaemon(true);
+                return thread;
+            });
+            digestSender.scheduleWithFixedDelay(this::queueFlush, coalesceWindow, coalesceWindow, TimeUnit.MILLISECONDS);
+        }
 //        initUpdateNotifiablesmap();
     }
 
@@ -61,95 +161,441 @@ public class NotificationUnit
 
 
     /**
-     * saves the notifications for all the users that need to get them and
-     * sends notifications to all the clients that are subscribed to notifications ans shoud get the notification
+     * queues the notification - it is saved for all the users that need to get them and
+     * sent to all the clients that are subscribed to notifications ans shoud get the notification, in the background
+     * a notification with a digest topic that is not urgent waits for the next digest of its topic
      * @param notifiable
-     * @return
+     * @return true if the notification was queued, false if the queue is full
      */
     public boolean notify(Notifiable notifiable)
     {
-        Set<User> usersToNotify = notifiable.getNotifyUsersList();
         Notification notification = notifiable.getNotification();
-        DB.persist(notification);
+        long queued = System.nanoTime();
+        if(!queue(() -> dispatch(notifiable, notification, queued)))
+        {
+            rejected.increment();
+            return false;
+        }
+        notifications.increment();
+        return true;
+    }
 
+    /**
+     * find the users of a queued notification and deliver it, or add it to the digests of its topic
+     * runs in the dispatcher thread
+     */
+    private void dispatch(Notifiable notifiable, Notification notification, long queued)
+    {
+        List<String> usernames;
+        try
+        {
+            usernames = usersToNotify(notifiable);
+        }
+        catch (RuntimeException e)
+        {
+            unresolved.increment();
+            e.printStackTrace();
+            return;
+        }
 
-        for(User user : usersToNotify)
+        String topic = coalesceWindow > 0 ? notifiable.getDigestTopic() : null;
+        if(topic != null && !notifiable.isUrgent())
         {
-            //add to the server side and to the db on offline
+            if(coalesce(topic, usernames, notification)) return;
+            digestOverflows.increment();
+            flushDigests(null); // the digests are full, deliver them early
+            if(coalesce(topic, usernames, notification)) return;
+            fanOut(usernames, notification, queued); // more users than digests, deliver it alone
+            return;
+        }
+        if(topic != null)
+        {
+            flushDigests(topic); // the earlier events of the topic are delivered before the urgent one
+        }
+        fanOut(usernames, notification, queued);
+    }
 
-            user.addNotification(notification);
-            DB.merge(user);
+    /**
+     * @return the usernames of the users that get the notification - the subscribers of its topics if they are known
+     */
+    private List<String> usersToNotify(Notifiable notifiable)
+    {
+        TopicIndex index = topicIndex;
+        Collection<String> topics = index == null ? null : notifiable.getTopics();
+        List<String> usernames = topics == null ? null : index.resolve(topics);
+        if(usernames != null) return usernames;
 
+        Set<?> usersToNotify = notifiable.getNotifyUsersList();
+        usernames = new ArrayList<>(usersToNotify.size());
+        for(Object user : usersToNotify) usernames.add(((User) user).getUsername());
+        return usernames;
+    }
 
-            //send the notifications to the users that are subscribed
-            try
+    /**
+     * hand a task to the dispatcher
+     * @return false if the queue is full
+     */
+    private boolean queue(Runnable task)
+    {
+        try
+        {
+            dispatcher.execute(task);
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * hand the next flush of all the digests to the dispatcher, if the queue is full the digests wait for the
+     * next window
+     */
+    private void queueFlush()
+    {
+        if(queue(() -> flushDigests(null))) return;
+        delayedFlushes.increment();
+        log.warn("the notification queue is full, " + getPendingDigests() + " digests wait for the next flush");
+    }
+
+    /**
+     * add the notification to the digest of its topic of every user
+     * @return false if there is no room for the new digests, nothing was added
+     */
+    private boolean coalesce(String topic, List<String> usernames, Notification notification)
+    {
+        synchronized (digests)
+        {
+            Map<String, Digest> topicDigests = digests.computeIfAbsent(topic, t -> new HashMap<>());
+            int newDigests = 0;
+            for(String username : usernames) if(!topicDigests.containsKey(username)) newDigests++;
+            if(pendingDigests + newDigests > digestCapacity)
+            {
+                if(topicDigests.isEmpty()) digests.remove(topic);
+                return false;
+            }
+
+            for(String username : usernames)
+            {
+                topicDigests.computeIfAbsent(username, user -> new Digest()).add(notification);
+            }
+            pendingDigests += newDigests;
+        }
+        coalesced.increment();
+        return true;
+    }
+
+    /**
+     * deliver the digests of a topic, the users that got the same notifications get the same digest - a single
+     * notification that is saved once and delivered to all of them
+     * runs in the dispatcher thread
+     * @param topic - topic of the digests, null for all the topics
+     */
+    private void flushDigests(String topic)
+    {
+        Map<String, Map<String, Digest>> due = new HashMap<>();
+        synchronized (digests)
+        {
+            if(topic == null)
+            {
+                due.putAll(digests);
+                digests.clear();
+                pendingDigests = 0;
+            }
+            else if(digests.containsKey(topic))
+            {
+                due.put(topic, digests.remove(topic));
+                pendingDigests -= due.get(topic).size();
+            }
+        }
+
+        for(Map.Entry<String, Map<String, Digest>> topicDigests : due.entrySet())
+        {
+            Map<List<Object>, Digest> sameDigests = new LinkedHashMap<>();
+            Map<List<Object>, List<String>> sameUsers = new HashMap<>();
+            for(Map.Entry<String, Digest> userDigest : topicDigests.getValue().entrySet())
             {
-                if(this.subscribedUsers.containsKey(user.getUsername()))
-                {//user is subscribed for live notifications, send the user client the notification
-                    InetAddress userIP = this.subscribedUsers.get(user.getUsername());
-                    Socket toUserSocket = new Socket(userIP, clientPort);
+                Digest digest = userDigest.getValue();
+                List<Object> key = Arrays.asList(digest.first, digest.last, digest.count);
+                sameDigests.putIfAbsent(key, digest);
+                sameUsers.computeIfAbsent(key, k -> new ArrayList<>()).add(userDigest.getKey());
+            }
 
-                    ObjectOutputStream out = new ObjectOutputStream(toUserSocket.getOutputStream());
+            for(Map.Entry<List<Object>, Digest> entry : sameDigests.entrySet())
+            {
+                Digest digest = entry.getValue();
+                Notification notification = digest.first;
+                if(digest.count > 1)
+                {
+                    notification = new Notification(String.format("%d new events in %s, the last: %s",
+                            digest.count, topicDigests.getKey(), digest.last.getMsg()));
+                    digestsSent.increment();
+                }
+                fanOut(sameUsers.get(entry.getKey()), notification, digest.since);
+            }
+        }
+    }
+
+    /**
+     * Description:     The notifications of a topic a single user didn't get yet
+     **/
+    private static class Digest
+    {
+        private final long since = System.nanoTime();
+        private Notification first;
+        private Notification last;
+        private int count;
+
+        private void add(Notification notification)
+        {
+            if(first == null) first = notification;
+            last = notification;
+            count++;
+        }
+    }
+
+    /**
+     * save the notification and hand its users to the delivery workers, deliveryBatch users at a time
+     */
+    private void fanOut(List<String> usernames, Notification notification, long queued)
+    {
+        if(!DB.persist(notification))
+        {
+            deliveryFailures.add(usernames.size());
+            return;
+        }
+        for(int first = 0; first < usernames.size(); first += deliveryBatch)
+        {
+            List<String> batch = usernames.subList(first, Math.min(first + deliveryBatch, usernames.size()));
+            pendingDeliveries.acquireUninterruptibly();
+            try
+            {
+                deliveryWorkers.execute(() -> deliver(batch, notification, queued));
+            }
+            catch (RejectedExecutionException e)
+            {
+                pendingDeliveries.release();
+            }
+        }
+    }
 
-                    out.writeObject(notification);
-                    out.flush();
-                    out.close();
+    /**
+     * add the notification to the inbox of the users (a JDBC batch of inserts) and push it to the users that are
+     * logged in, it is marked as read for a user when its client acknowledges it
+     */
+    private void deliver(List<String> usernames, Notification notification, long queued)
+    {
+        try
+        {
+            List<InboxNotification> rows = new ArrayList<>(usernames.size());
+            for(String username : usernames) rows.add(new InboxNotification(notification, username));
+            if(!DB.persistAll(rows))
+            {
+                deliveryFailures.add(usernames.size());
+                return;
+            }
 
-                    //after sending the notification to the user, mark it as read in the server
-                    user.markNotificationAsRead(notification);
-                    //TODO: mark the notification as read in the DB too
-                    DB.merge(user);
+            //push the notification to the users that are logged in
+            PushServer server = pushServer;
+            if(server != null)
+            {
+                for(String username : usernames)
+                {
+                    if(server.publish(username, notification, () -> acknowledged(notification.getId(), username)))
+                    {
+                        pushed.increment();
+                    }
                 }
             }
-            catch(Exception e)
+            delivered.add(usernames.size());
+        }
+        catch (Exception e)
+        {
+            deliveryFailures.add(usernames.size());
+            e.printStackTrace();
+        }
+        finally
+        {
+            long latency = System.nanoTime() - queued;
+            deliveryLatencyNanos.add(latency * usernames.size());
+            maxDeliveryLatencyNanos.accumulateAndGet(latency, Math::max);
+            pendingDeliveries.release();
+        }
+    }
+
+    /**
+     * the client of a user acknowledged a pushed notification - queue its receipt, the receipts that arrive while
+     * the previous ones are written are written together
+     * runs in the reader thread of the push connection
+     */
+    private void acknowledged(Long notificationId, String username)
+    {
+        acknowledged.increment();
+        synchronized (receipts)
+        {
+            boolean idle = receipts.isEmpty();
+            receipts.computeIfAbsent(notificationId, id -> new ArrayList<>()).add(username);
+            if(!idle) return;
+        }
+        receiptWriter.execute(this::writeReceipts);
+    }
+
+    /**
+     * mark the acknowledged notifications as read in the inboxes of their users, one update per notification
+     */
+    private void writeReceipts()
+    {
+        Map<Long, List<String>> due;
+        synchronized (receipts)
+        {
+            due = new HashMap<>(receipts);
+            receipts.clear();
+        }
+        for(Map.Entry<Long, List<String>> receipt : due.entrySet())
+        {
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put("notification", receipt.getKey());
+            parameters.put("usernames", receipt.getValue());
+            if(!DB.update("MarkInboxRead", parameters))
             {
-                e.printStackTrace();
+                log.warn("could not mark notification " + receipt.getKey() + " as read for " + receipt.getValue().size() + " users");
             }
         }
+    }
 
+    /**
+     * Read the first page of the inbox of a user that logged in, the client reads the next pages by InboxByUser
+     * @param user - the logged in user
+     */
+    public void loadInbox(User user)
+    {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("username", user.getUsername());
+        user.getInbox().setPageLoader((firstResult, maxResults) ->
+                NotificationInbox.PageLoader.rows(DB.query("InboxByUser", parameters, firstResult, maxResults)));
+        user.getInbox().loadPage();
+        user.getInbox().setPageLoader(null);
+    }
 
-        return true;
+    /**
+     * @param pushServer - server of the push channels of the logged in users
+     */
+    public void setPushServer(PushServer pushServer)
+    {
+        this.pushServer = pushServer;
     }
 
+    /**
+     * @param topicIndex - index of the subscribers of the notification topics, null to use the users of the
+     *                   notifications
+     */
+    public void setTopicIndex(TopicIndex topicIndex)
+    {
+        this.topicIndex = topicIndex;
+    }
 
     /**
-     * add a user to the subscribers list - so he will be able to get live notifications
-     * @param username
-     * @param ipAddress
-     * @return
+     * @return number of digests (user and topic) waiting for the next flush
      */
-    public boolean subscribeUser(String username, InetAddress ipAddress)
+    public int getPendingDigests()
     {
-        if(this.subscribedUsers.containsKey(username))
+        synchronized (digests)
         {
-            return false;
+            return pendingDigests;
         }
+    }
 
-        this.subscribedUsers.put(username, ipAddress);
-        return true;
+    /**
+     * @return number of notifications waiting for the dispatcher
+     */
+    public int getQueueDepth()
+    {
+        return dispatcher.getQueue().size();
+    }
+
+    /**
+     * @return number of deliveries handed to the workers and not done yet
+     */
+    public int getPendingDeliveries()
+    {
+        return workers * DELIVERIES_PER_WORKER - pendingDeliveries.availablePermits();
+    }
+
+    public long getDelivered()
+    {
+        return delivered.sum();
+    }
+
+    public long getRejected()
+    {
+        return rejected.sum();
+    }
+
+    /**
+     * @return a single line with all the counters
+     */
+    public String snapshot()
+    {
+        long deliveries = delivered.sum();
+        long failures = deliveryFailures.sum();
+        double averageLatency = deliveries + failures == 0 ? 0 : deliveryLatencyNanos.sum() / 1e6 / (deliveries + failures);
+        return String.format("notifications queued=%d coalesced=%d digests=%d pendingDigests=%d digestOverflows=%d " +
+                        "delayedFlushes=%d queueDepth=%d rejected=%d unresolved=%d pendingDeliveries=%d delivered=%d " +
+                        "failures=%d pushed=%d acknowledged=%d avgDeliveryLatency=%.2fms maxDeliveryLatency=%.2fms",
+                notifications.sum(), coalesced.sum(), digestsSent.sum(), getPendingDigests(), digestOverflows.sum(),
+                delayedFlushes.sum(), getQueueDepth(),
+                getRejected(), unresolved.sum(), getPendingDeliveries(), deliveries, failures, pushed.sum(), acknowledged.sum(), averageLatency,
+                maxDeliveryLatencyNanos.get() / 1e6);
     }
 
 
     /**
-     * remove a user from the live notifications subscribers list
+     * start the push channel subscription of a user that logged in - so he will be able to get live notifications
      * @param username
-     * @return
+     * @return the token the client subscribes with, null if notifications are not pushed
      */
-    public boolean unsubscribeUser(String username)
+    public String subscribeUser(String username)
     {
-        if(!this.subscribedUsers.containsKey(username))
+        PushServer server = pushServer;
+        if(server == null)
         {
-            return false;
+            return null;
         }
 
-        this.subscribedUsers.remove(username);
-        return true;
+        return server.open(username);
+    }
+
+
+    /**
+     * end the push channel subscription of a user
+     * @param username
+     * @return true if the user was subscribed
+     */
+    public boolean unsubscribeUser(String username)
+    {
+        PushServer server = pushServer;
+        return server != null && server.close(username);
     }
 
     public boolean markAllNotificationsOfUserAsRead(User user) {
-        //TODO: mark the notifications as read in the DB
         user.markAllNotificationsAsRead();
-        return DB.merge(user);
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("username", user.getUsername());
+        return DB.update("MarkAllInboxRead", parameters);
+    }
+
+    /**
+     * push a cache invalidation to every subscribed client, in the background so the committing request does not
+     * wait for the clients
+     * @param tables - tables that were written
+     */
+    public void broadcastInvalidation(Collection<String> tables)
+    {
+        PushServer server = pushServer;
+        if(server == null) return;
+        CacheInvalidation invalidation = new CacheInvalidation(new HashSet<>(tables));
+        invalidationSender.execute(() -> server.broadcast(invalidation));
     }
 
 }
@@ -0,0 +1,139 @@
+package BL.Server;
+
+import BL.Communication.CompressionStats;
+import BL.Server.utils.DB;
+import BL.Server.utils.JdbcPoolMetrics;
+import lombok.extern.log4j.Log4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Description:     Counts the requests handled by the server so the execution modes (fixed pool / virtual threads)
+ *                  can be compared: throughput, latency, concurrency and time spent waiting for the database
+ *                  A snapshot is written to the event log every server.metricsInterval ms
+ **/
+@Log4j(topic = "event")
+public class ServerMetrics
+{
+    private final String executionMode;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final long startTime = System.currentTimeMillis();
+    private ScheduledExecutorService reporter;
+    private final List<Supplier<String>> reports = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor
+     * @param executionMode - name of the execution mode the metrics belong to
+     */
+    public ServerMetrics(String executionMode)
+    {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @return start time (nano seconds) of the request, to pass to requestFinished
+     */
+    public long requestStarted()
+    {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        return System.nanoTime();
+    }
+
+    /**
+     * @param startNanos - the value returned by requestStarted
+     */
+    public void requestFinished(long startNanos)
+    {
+        latencyNanos.add(System.nanoTime() - startNanos);
+        requests.increment();
+        inFlight.decrementAndGet();
+    }
+
+    public long getRequests()
+    {
+        return requests.sum();
+    }
+
+    /**
+     * @return requests per second since the metrics were created
+     */
+    public double getThroughput()
+    {
+        long seconds = Math.max(1, (System.currentTimeMillis() - startTime) / 1000);
+        return (double) requests.sum() / seconds;
+    }
+
+    /**
+     * @return average time (ms) to handle a request
+     */
+    public double getAverageLatency()
+    {
+        long count = requests.sum();
+        return count == 0 ? 0 : latencyNanos.sum() / 1e6 / count;
+    }
+
+    public int getMaxInFlight()
+    {
+        return maxInFlight.get();
+    }
+
+    /**
+     * @return a single line with all the metrics
+     */
+    public String snapshot()
+    {
+        long dbWaits = DB.getPermitWaits();
+        double dbWait = dbWaits == 0 ? 0 : DB.getPermitWaitNanos() / 1e6 / dbWaits;
+        return String.format("mode=%s requests=%d throughput=%.2f/s avgLatency=%.2fms inFlight=%d maxInFlight=%d avgDbWait=%.2fms freeDbPermits=%d",
+                executionMode, getRequests(), getThroughput(), getAverageLatency(), inFlight.get(), getMaxInFlight(),
+                dbWait, DB.getAvailablePermits());
+    }
+
+    /**
+     * @param report - a single line of other metrics, written to the log with every snapshot
+     */
+    public void addReport(Supplier<String> report)
+    {
+        reports.add(report);
+    }
+
+    /**
+     * write a snapshot to the log every interval ms
+     * @param interval - time (ms) between two snapshots
+     */
+    public void startReporting(long interval)
+    {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "server-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            log.info(snapshot());
+            if(DB.getQueryCache() != null) log.info(DB.getQueryCache().snapshot());
+            if(DB.getSingleFlight() != null) log.info(DB.getSingleFlight().snapshot());
+            if(JdbcPoolMetrics.isActive()) log.info(JdbcPoolMetrics.snapshot());
+            if(DB.getSecondLevelCacheMetrics() != null) log.info(DB.getSecondLevelCacheMetrics().snapshot());
+            if(DB.getReplicaRouter() != null) log.info(DB.getReplicaRouter().snapshot());
+            for(Supplier<String> report : reports) log.info(report.get());
+            String compression = CompressionStats.snapshot();
+            if(!compression.isEmpty()) log.info("compression " + compression);
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopReporting()
+    {
+        if(reporter != null) reporter.shutdownNow();
+    }
+}
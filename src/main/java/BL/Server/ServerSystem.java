@@ -1,14 +1,24 @@
 
 package BL.Server;
 
+import BL.Communication.ExecutionMode;
+import BL.Communication.FrameCodec;
+import BL.Communication.IRequestStrategy;
 import BL.Communication.IServerStrategy;
+import BL.Communication.NioServer;
+import BL.Communication.PushServer;
 import BL.Communication.Server;
 import BL.Communication.SystemRequest;
 import BL.Communication.SystemRequest.Type;
+import BL.Communication.SystemResponse;
+import BL.Communication.WireCodec;
 import BL.Server.ExternalSystems.FinancialSystem;
 import BL.Server.ExternalSystems.TaxSystem;
 import BL.Server.utils.Configuration;
 import BL.Server.utils.DB;
+import BL.Server.utils.JdbcPoolMetrics;
+import BL.Server.utils.ReplicaRouter;
+import BL.Server.utils.TopicIndex;
 import DL.Administration.SystemManager;
 import DL.Users.Notifiable;
 import DL.Users.User;
@@ -22,13 +32,29 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import javax.persistence.PersistenceUnit;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -49,14 +75,23 @@ import java.util.Properties;
 @Log4j(topic = "event")
 @Setter
 @Getter
-public class ServerSystem implements IServerStrategy {
+public class ServerSystem implements IServerStrategy, IRequestStrategy {
 
 //    public final static Logger elog = LogManager.getLogger("error");
     static final String PERSISTENCE_UNIT_NAME = "sportify";  /* The name of the persistence unit*/
     @PersistenceUnit
     static EntityManagerFactory emf;  /* The central, shared entity manager factory instance. */
     static Server server;
+    static NioServer nioServer;
+    static PushServer pushServer;
     private DB dataBase;
+    private final int connectionIdleTimeout = Integer
+            .parseInt(Configuration.getPropertyValue("server.connectionIdleTimeout"));
+    private final ExecutionMode executionMode = ExecutionMode
+            .valueOf(Configuration.getPropertyValue("server.executionMode").toUpperCase());
+    private final ServerMetrics metrics = new ServerMetrics(executionMode.toString());
+    private ExecutorService requestExecutor; // executes the pipelined requests of the blocking server
+    private final int defaultChunkSize = Integer.parseInt(Configuration.getPropertyValue("server.streamChunkSize"));
 
     //notification handling objects
     private NotificationUnit notificationUnit;
@@ -81,6 +116,9 @@ public class ServerSystem implements IServerStrategy {
     public ServerSystem(DbSelector dbType, Strategy strategy, NotificationUnit notificationUnit) {
         final EntityManagerFactory entityManagerFactory = createEntityManagerFactory(dbType, strategy);
         dataBase = DB.getDataBaseInstance(entityManagerFactory);
+        if (Boolean.parseBoolean(Configuration.getPropertyValue("db.replica.enabled"))) {
+            DB.setReplicaRouter(createReplicaRouter());
+        }
         final String sysQueryName = "SystemManagers";
         final boolean systemManagers =
                 createEM().createNamedQuery(sysQueryName).getFirstResult() == 0;
@@ -90,6 +128,60 @@ public class ServerSystem implements IServerStrategy {
         }
 
         this.notificationUnit = notificationUnit;
+        DB.addTableWriteListener(notificationUnit::broadcastInvalidation);
+        metrics.addReport(notificationUnit::snapshot);
+        TopicIndex topicIndex = createTopicIndex();
+        DB.addTableWriteListener(topicIndex::invalidate);
+        notificationUnit.setTopicIndex(topicIndex);
+        metrics.addReport(topicIndex::snapshot);
+    }
+
+    /**
+     * Create the index of the subscribers of the notification topics, the subscribers of a topic are read by
+     * projection named queries (usernames only) and dropped when a table those queries read is written
+     *
+     * @return the topic index
+     */
+    public static TopicIndex createTopicIndex() {
+        TopicIndex topicIndex = new TopicIndex(Integer.parseInt(Configuration.getPropertyValue("notification.topicCapacity")));
+        registerTopicKind(topicIndex, Notifiable.TEAM_TOPIC, "team", false,
+                "TeamMembersUsernames", "TeamOwnersUsernames");
+        registerTopicKind(topicIndex, Notifiable.PAGE_TOPIC, "page", true,
+                "PageFollowersUsernames");
+        registerTopicKind(topicIndex, Notifiable.MATCH_TOPIC, "match", true,
+                "MatchMembersUsernames", "MatchOwnersUsernames", "MatchFollowersUsernames");
+        registerTopicKind(topicIndex, Notifiable.LEAGUE_SEASON_TOPIC, "leagueSeason", true,
+                "LeagueSeasonMembersUsernames", "LeagueSeasonOwnersUsernames", "LeagueSeasonFollowersUsernames");
+        return topicIndex;
+    }
+
+    /**
+     * the subscribers of a topic of the kind are the usernames returned by the queries, all of them run in a single
+     * entity manager with the id of the topic as their only parameter
+     */
+    private static void registerTopicKind(TopicIndex topicIndex, String kind, String parameter, boolean numericId,
+                                          String... queryNames) {
+        Set<String> tables = new HashSet<>();
+        for (String queryName : queryNames) {
+            Set<String> querySpaces = DB.getQuerySpaces(queryName);
+            if (querySpaces == null) {
+                tables = null; // unknown tables, every write drops the topics
+                break;
+            }
+            tables.addAll(querySpaces);
+        }
+        topicIndex.register(kind, tables, id -> {
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put(parameter, numericId ? (Object) Integer.valueOf(id) : id);
+            List<?> results = DB.queryBatch(Arrays.asList(queryNames),
+                    Collections.nCopies(queryNames.length, parameters));
+            if (results == null) return null;
+            List<String> usernames = new ArrayList<>();
+            for (Object result : results) {
+                for (Object username : (List<?>) result) usernames.add((String) username);
+            }
+            return usernames;
+        });
     }
 
     /**
@@ -137,14 +229,90 @@ public class ServerSystem implements IServerStrategy {
         props.setProperty("javax.persistence.jdbc.user", user);
         props.setProperty("javax.persistence.jdbc.password", pw);
         props.setProperty("javax.persistence.jdbc.url", connectionStr);
+        setConnectionPoolProperties(props);
+        setSecondLevelCacheProperties(props);
+        // send inserts and updates in JDBC batches, grouped by entity so a batch is not cut by every other entity
+        props.setProperty("hibernate.jdbc.batch_size", Configuration.getPropertyValue("db.batchSize"));
+        props.setProperty("hibernate.order_inserts", "true");
+        props.setProperty("hibernate.order_updates", "true");
+        props.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        // lazy collections of the same role are loaded together (see FetchPlan)
+        props.setProperty("hibernate.default_batch_fetch_size", Configuration.getPropertyValue("db.fetchBatchSize"));
         if (strategy != Strategy.NONE) {
             props.setProperty("javax.persistence.schema-generation.database.action",
                     strategy.toString());
         }
         emf = Persistence.createEntityManagerFactory(puName, props);
+        JdbcPoolMetrics.register(emf);
         return emf;
     }
 
+    /**
+     * Create the router of the reads to the read replica set by the db.replica.* values in 'config.properties'
+     * The replica has its own read only connection pool and no second level cache - the writes to the primary
+     * would not evict its entries
+     *
+     * @return the replica router
+     */
+    public static ReplicaRouter createReplicaRouter() {
+        Properties props = new Properties();
+        String connectionStr = Configuration.getREPLICA_DBConnection();
+        log.log(Level.INFO, "REPLICA CONNECTION URL ----> " + connectionStr);
+        props.setProperty("javax.persistence.jdbc.user", Configuration.getPropertyValue("db.replica.user"));
+        props.setProperty("javax.persistence.jdbc.password", Configuration.getPropertyValue("db.replica.password"));
+        props.setProperty("javax.persistence.jdbc.url", connectionStr);
+        setConnectionPoolProperties(props);
+        props.setProperty("hibernate.hikari.poolName", "sportify-replica");
+        props.setProperty("hibernate.hikari.readOnly", "true");
+        props.setProperty("hibernate.cache.use_second_level_cache", "false");
+        props.setProperty("hibernate.cache.use_query_cache", "false");
+        props.setProperty("hibernate.default_batch_fetch_size", Configuration.getPropertyValue("db.fetchBatchSize"));
+        EntityManagerFactory replica = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, props);
+        return new ReplicaRouter(replica,
+                Integer.parseInt(Configuration.getPropertyValue("db.maxConcurrency")),
+                Long.parseLong(Configuration.getPropertyValue("db.replica.maxStaleness")),
+                Configuration.getPropertyValue("db.replica.lagQuery"),
+                Long.parseLong(Configuration.getPropertyValue("db.replica.lagCheckInterval")));
+    }
+
+    /**
+     * Use a HikariCP connection pool sized by the db.pool.* values in 'config.properties'
+     *
+     * @param props - properties of the entity manager factory
+     */
+    private static void setConnectionPoolProperties(Properties props) {
+        props.setProperty("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        props.setProperty("hibernate.hikari.poolName", "sportify");
+        props.setProperty("hibernate.hikari.minimumIdle", Configuration.getPropertyValue("db.pool.minIdle"));
+        props.setProperty("hibernate.hikari.maximumPoolSize", Configuration.getPropertyValue("db.pool.maxSize"));
+        props.setProperty("hibernate.hikari.connectionTimeout", Configuration.getPropertyValue("db.pool.connectionTimeout"));
+        props.setProperty("hibernate.hikari.idleTimeout", Configuration.getPropertyValue("db.pool.idleTimeout"));
+        props.setProperty("hibernate.hikari.maxLifetime", Configuration.getPropertyValue("db.pool.maxLifetime"));
+        props.setProperty("hibernate.hikari.leakDetectionThreshold", Configuration.getPropertyValue("db.pool.leakDetectionThreshold"));
+        // statements are cached by the postgres driver, prepared on the server from their first execution
+        props.setProperty("hibernate.hikari.dataSource.preparedStatementCacheQueries", Configuration.getPropertyValue("db.pool.statementCacheSize"));
+        props.setProperty("hibernate.hikari.dataSource.prepareThreshold", "1");
+    }
+
+    /**
+     * Keep the @Cacheable entities and the cacheable named queries in an in-process (ehcache) second level cache
+     * if cache.secondLevel is on, the regions are configured by cache.secondLevel.config
+     *
+     * @param props - properties of the entity manager factory
+     */
+    private static void setSecondLevelCacheProperties(Properties props) {
+        String enabled = Configuration.getPropertyValue("cache.secondLevel");
+        props.setProperty("hibernate.cache.use_second_level_cache", enabled);
+        props.setProperty("hibernate.cache.use_query_cache", enabled);
+        if (Boolean.parseBoolean(enabled)) {
+            props.setProperty("hibernate.cache.region.factory_class", "jcache");
+            props.setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+            props.setProperty("hibernate.javax.cache.uri", Configuration.getPropertyValue("cache.secondLevel.config"));
+            props.setProperty("hibernate.javax.cache.missing_cache_strategy", "create");
+            props.setProperty("hibernate.generate_statistics", "true"); // region hit ratios
+        }
+    }
+
     /**
      * Convenience method for creating an {@code EntityManager}. This method creates a new {@code
      * EntityManager} using the central {@code EntityManagerFactory}.
@@ -211,8 +379,24 @@ public class ServerSystem implements IServerStrategy {
         int serverPort = Integer.parseInt(Configuration.getPropertyValue("server.port"));
         int poolSize = Integer.parseInt(Configuration.getPropertyValue("server.poolSize"));
         int listeningInterval = Integer.parseInt(Configuration.getPropertyValue("server.listeningInterval"));
-        server = new Server(serverPort, poolSize, listeningInterval, this);
-        server.start();
+        if (ServerMode.valueOf(Configuration.getPropertyValue("server.mode").toUpperCase()) == ServerMode.NIO) {
+            int ioThreads = Integer.parseInt(Configuration.getPropertyValue("server.ioThreads"));
+            nioServer = new NioServer(serverPort, ioThreads, poolSize, listeningInterval, this, executionMode);
+            nioServer.start();
+        } else {
+            server = new Server(serverPort, poolSize, listeningInterval, this, executionMode);
+            server.start();
+        }
+        pushServer = new PushServer(Integer.parseInt(Configuration.getPropertyValue("push.port")), listeningInterval,
+                Long.parseLong(Configuration.getPropertyValue("push.heartbeatInterval")),
+                Integer.parseInt(Configuration.getPropertyValue("push.window")),
+                Integer.parseInt(Configuration.getPropertyValue("push.bufferSize")),
+                Long.parseLong(Configuration.getPropertyValue("push.resumeTimeout")), executionMode,
+                Integer.parseInt(Configuration.getPropertyValue("push.maxConnections")));
+        pushServer.start();
+        notificationUnit.setPushServer(pushServer);
+        metrics.addReport(pushServer::snapshot);
+        metrics.startReporting(Long.parseLong(Configuration.getPropertyValue("server.metricsInterval")));
         log.info("server is up and listen on port: " + serverPort);
         initializeExternalSystems();
     }
@@ -221,31 +405,176 @@ public class ServerSystem implements IServerStrategy {
     //public void serverStrategy(InputStream inFromClient, OutputStream outToClient) {
     public void serverStrategy(Socket clientSocket) {
 
+        Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
         try {
             InputStream inFromClient = clientSocket.getInputStream();
             OutputStream outToClient = clientSocket.getOutputStream();
 
             //TODO: notification subscription only if the client asked for a subscription to the notifications
 
+            DataOutputStream toClient = new DataOutputStream(new BufferedOutputStream(outToClient));
+            DataInputStream fromClient = new DataInputStream(new BufferedInputStream(inFromClient));
+            clientSocket.setSoTimeout(connectionIdleTimeout);
+
+            // the connection is kept open and serves requests until the client closes it or stays idle for too long,
+            // requests are executed concurrently and answered in the order they complete (pipelining)
+            while (!clientSocket.isClosed()) {
+                byte[] frame;
+                try {
+                    frame = FrameCodec.readFrameBody(fromClient);
+                } catch (SocketTimeoutException e) {
+                    if (inFlight.isEmpty()) break;
+                    continue;
+                } catch (EOFException e) {
+                    break;
+                }
 
-            ObjectInputStream fromClient = new ObjectInputStream(inFromClient);
-            ObjectOutputStream toClientObject = new ObjectOutputStream(outToClient);
-            Object request = fromClient.readObject();
-            SystemRequest systemRequest = (SystemRequest) request;
-            if (systemRequest.type.equals(Type.Transaction) && systemRequest.data instanceof List) {
-                List<SystemRequest> systemRequestList = (List<SystemRequest>) systemRequest.data;
-                systemRequestList
-                        .forEach(requestIterator -> handleRequest(toClientObject, requestIterator, clientSocket));
-            } else {
-                log.info("handling a request from client");
-                handleRequest(toClientObject, systemRequest, clientSocket);
+                CompletableFuture<Void> task = CompletableFuture
+                        .runAsync(() -> respond(frame, clientSocket, toClient), getRequestExecutor());
+                inFlight.add(task);
+                task.whenComplete((ignored, error) -> inFlight.remove(task));
             }
 
             //TODO: if the request is unsubscription from notifications - close the socket
         } catch (Exception e) {
             e.printStackTrace();
             log.error(e.getMessage());
+        } finally {
+            // the socket is closed when the strategy returns, answer the requests that are still running first
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+            connectionClosed(clientSocket);
+        }
+    }
+
+    /**
+     * Decode and execute a single request of a pipelined connection and write its response,
+     * a request that fails is answered with its error. A frame that can't be decoded closes the connection,
+     * it has no request id to answer
+     *
+     * @param frame        - body of the request frame
+     * @param clientSocket - socket of the connection
+     * @param toClient     - stream of the connection, shared by all the requests of the connection
+     */
+    private void respond(byte[] frame, Socket clientSocket, DataOutputStream toClient) {
+        WireCodec codec;
+        SystemRequest systemRequest;
+        try {
+            codec = FrameCodec.codecOf(frame); // answer with the codec of the client
+            systemRequest = (SystemRequest) FrameCodec.decodeBody(frame);
+        } catch (Exception e) {
+            e.printStackTrace();
+            log.error(e.getMessage());
+            closeSocket(clientSocket);
+            return;
+        }
+
+        SystemResponse response;
+        try {
+            log.info("handling a request from client");
+            response = new SystemResponse(systemRequest.requestId,
+                    handleRequest(systemRequest, clientSocket.getInetAddress(), clientSocket));
+        } catch (Exception e) {
+            e.printStackTrace();
+            log.error(e.getMessage());
+            response = new SystemResponse(systemRequest.requestId, null, String.valueOf(e));
+        }
+
+        boolean compression = FrameCodec.isCompressionEnabled() && FrameCodec.acceptsCompression(frame);
+        String statsKey = systemRequest.type + "/response";
+        try {
+            ByteBuffer responseFrame;
+            try {
+                responseFrame = FrameCodec.toFrameBuffer(response, codec, compression, statsKey);
+            } catch (IOException | RuntimeException e) { // the answer can't be encoded, answer with the error
+                e.printStackTrace();
+                log.error(e.getMessage());
+                responseFrame = FrameCodec.toFrameBuffer(new SystemResponse(systemRequest.requestId, null,
+                        String.valueOf(e)), codec, compression, statsKey);
+            }
+            synchronized (toClient) {
+                toClient.write(responseFrame.array(), 0, responseFrame.limit());
+                toClient.flush();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            log.error(e.getMessage());
+            closeSocket(clientSocket);
+        }
+    }
+
+    private void closeSocket(Socket clientSocket) {
+        try {
+            clientSocket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return the executor that runs the requests of the blocking server, created on first use
+     */
+    private synchronized ExecutorService getRequestExecutor() {
+        if (requestExecutor == null) {
+            requestExecutor = executionMode
+                    .createExecutor(Integer.parseInt(Configuration.getPropertyValue("server.poolSize")));
+        }
+        return requestExecutor;
+    }
+
+    /**
+     * Execute all the requests of a transaction request in a single database transaction (see DB.executeTransaction)
+     * The notifications of the transaction are sent only after it was committed
+     *
+     * @param systemRequest - transaction request, holds a list of requests
+     * @return true if the transaction was committed, false otherwise
+     */
+    private boolean handleTransaction(SystemRequest systemRequest) {
+        List<SystemRequest> writes = new ArrayList<>();
+        List<Notifiable> notifications = new ArrayList<>();
+        for (Object write : (List<?>) systemRequest.data) {
+            SystemRequest request = (SystemRequest) write;
+            switch (request.type) {
+                case Notify:
+                    notifications.add((Notifiable) request.data);
+                    break;
+                case Insert:
+                case Delete:
+                case Update:
+                case Merge:
+                    if (request.type == Type.Insert && request.data instanceof Notifiable) {
+                        notifications.add((Notifiable) request.data);
+                    }
+                    writes.add(request);
+                    break;
+                default:
+                    log.warn(request.type + " request can't be part of a transaction");
+                    return false;
+            }
+        }
+
+        if (!writes.isEmpty() && !DB.executeTransaction(writes)) return false;
+        notifications.forEach(notificationUnit::notify);
+        return true;
+    }
+
+    /**
+     * Execute all the queries of a batch request in a single read only entity manager
+     *
+     * @param systemRequest - batch request, holds a list of query requests
+     * @return list of the results list of every query, null if one of the requests is not a query or failed
+     */
+    private List<List<?>> handleBatch(SystemRequest systemRequest) {
+        List<String> queryNames = new ArrayList<>();
+        List<Object> parameters = new ArrayList<>();
+        for (Object query : (List<?>) systemRequest.data) {
+            SystemRequest request = (SystemRequest) query;
+            if (request.type != Type.Query) {
+                log.warn("batch request can hold only queries");
+                return null;
+            }
+            queryNames.add(request.queryName);
+            parameters.add(request.data);
         }
+        return DB.queryBatch(queryNames, parameters);
     }
 
 
@@ -265,6 +594,15 @@ public class ServerSystem implements IServerStrategy {
     }
 
 
+    /**
+     * BLOCKING - a worker thread per connected client (see Server)
+     * NIO - selector based I/O threads and a separate worker pool for the requests (see NioServer)
+     */
+    public enum ServerMode {
+        BLOCKING, NIO
+    }
+
+
     public enum Strategy {
         NONE {
             @Override
@@ -295,89 +633,124 @@ public class ServerSystem implements IServerStrategy {
     /**
      * Strategy to execute when communicating with a client
      *
-     * @param systemRequest  - request to handle
-     * @param toClientObject - ObjectOutputStream of a socket to the client
+     * @param systemRequest - request to handle
+     * @param clientAddress - address of the client
+     * @return the answer to send back to the client, null if the request failed
+     */
+    @Override
+    public Object handleRequest(SystemRequest systemRequest, InetAddress clientAddress) {
+        return handleRequest(systemRequest, clientAddress, clientAddress);
+    }
+
+    /**
+     * Strategy to execute when communicating with a client
+     *
+     * @param systemRequest - request to handle
+     * @param clientAddress - address of the client
+     * @param connection    - the connection of the client, owns the cursors of its streams
+     * @return the answer to send back to the client, null if the request failed
      */
-    public void handleRequest(ObjectOutputStream toClientObject, SystemRequest systemRequest, Socket clientSocket) {
+    @Override
+    public Object handleRequest(SystemRequest systemRequest, InetAddress clientAddress, Object connection) {
+        long start = metrics.requestStarted();
+        DB.setSession(clientAddress); // a client reads its own writes even when reads go to the replica
+        try {
+            return executeRequest(systemRequest, clientAddress, connection);
+        } finally {
+            DB.setSession(null);
+            metrics.requestFinished(start);
+        }
+    }
+
+    /**
+     * Close the cursors of the streams of a connection that was closed
+     *
+     * @param connection - the connection of the client
+     */
+    @Override
+    public void connectionClosed(Object connection) {
+        int closed = DB.closeCursors(connection);
+        if (closed > 0) log.info(closed + " cursors of a closed connection were closed");
+    }
+
+    /**
+     * Execute a single request
+     *
+     * @param systemRequest - request to execute
+     * @param clientAddress - address of the client
+     * @param connection    - the connection of the client
+     * @return the answer to send back to the client, null if the request failed
+     */
+    private Object executeRequest(SystemRequest systemRequest, InetAddress clientAddress, Object connection) {
         try {
-            System.out.println("welcome");
             switch (systemRequest.type) {
                 case Login:
                     log.info(systemRequest.type + " request has been recived!");
                     List userToClient = DB.query("UserByUsernameAndPassword", systemRequest.data); //get list that contains only the user by username and password
-//                    List userToClient = new ArrayList();
-//                    userToClient.add(new Fan("admin", "admin", "admin"));
-//                    toClientObject.writeObject((Serializable)userToClient);
 
-                    toClientObject.flush();
-
-                    if(userToClient.size() > 0)
+                    if(userToClient != null && userToClient.size() > 0)
                     {//there is a user with these credentials
                         User loggingInUser = (User)userToClient.get(0);
-                        notificationUnit.subscribeUser(loggingInUser.getUsername(), clientSocket.getInetAddress());
+                        loggingInUser.setPushToken(notificationUnit.subscribeUser(loggingInUser.getUsername()));
 
                         //after sending the user object with the notifications to the client, make all notifications changed to read
                         notificationUnit.markAllNotificationsOfUserAsRead(loggingInUser);
+                        notificationUnit.loadInbox(loggingInUser); // the first page, the client reads the rest
                     }
 
-                    toClientObject.writeObject(userToClient);
-
-                    break;
+                    return userToClient;
                 case Logout:
                     log.info(systemRequest.type + " request has been recived!");
                     User loggingOutUser = (User)systemRequest.data;
                     notificationUnit.unsubscribeUser(loggingOutUser.getUsername());
-                    toClientObject.writeObject(true);
-                    break;
+                    return true;
                 case Notify:
                     Notifiable notifiable = (Notifiable)systemRequest.data;
-                    notificationUnit.notify(notifiable);
-                    toClientObject.writeObject(true);
-                    break;
+                    return notificationUnit.notify(notifiable); // queued, delivered in the background
                 case Delete:
                     log.info(systemRequest.type + " request has been recived!");
                     if (systemRequest.data instanceof List) {
-                        toClientObject.writeObject(DB.removeAll((List) systemRequest.data));
-                    } else {
-                        toClientObject.writeObject(DB.remove(systemRequest.data));
+                        return DB.removeAll((List) systemRequest.data);
                     }
-                    toClientObject.flush();
-                    break;
+                    return DB.remove(systemRequest.data);
                 case Insert:
                     log.info(systemRequest.type + " request has been recived!");
-                    if (systemRequest.data instanceof List) {
-                        toClientObject.writeObject(DB.persistAll((List) systemRequest.data));
-                    } else {
-                        toClientObject.writeObject(DB.persist(systemRequest.data));
-                    }
+                    boolean inserted = systemRequest.data instanceof List ?
+                            DB.persistAll((List) systemRequest.data) : DB.persist(systemRequest.data);
 
                     if (systemRequest.data instanceof Notifiable) {
                         notificationUnit.notify((Notifiable) systemRequest.data);
                     }
 
-                    toClientObject.flush();
-                    break;
+                    return inserted;
                 case Update:
                     log.info(systemRequest.type + " request has been recived!");
-                    toClientObject.writeObject(DB.update(systemRequest.queryName, systemRequest.data));
-                    toClientObject.flush();
-
                     //handle notifications for update queries
-
-
-                    break;
+                    return DB.update(systemRequest.queryName, systemRequest.data);
                 case Merge:
                     log.info(systemRequest.type + " request has been recived!");
-                    toClientObject.writeObject(DB.merge(systemRequest.data));
-                    toClientObject.flush();
-                    break;
-
+                    return DB.merge(systemRequest.data);
                 case Query:
                     log.info(systemRequest.type + " request has been recived!");
-                    List toClient = DB.query(systemRequest.queryName, systemRequest.data);
-                    toClientObject.writeObject(toClient);
-                    toClientObject.flush();
-                    break;
+                    return DB.cachedQuery(systemRequest.queryName, systemRequest.data,
+                            systemRequest.firstResult, systemRequest.maxResults, systemRequest.fetchGraph);
+                case Stream:
+                    log.info(systemRequest.type + " request has been recived!");
+                    return DB.openCursor(systemRequest.queryName, systemRequest.data,
+                            systemRequest.maxResults > 0 ? systemRequest.maxResults : defaultChunkSize, connection);
+                case Fetch:
+                    return DB.fetch((Long) systemRequest.data, connection);
+                case CloseStream:
+                    return DB.closeCursor((Long) systemRequest.data, connection);
+                case QuerySpaces:
+                    Set<String> querySpaces = DB.getQuerySpaces(systemRequest.queryName, systemRequest.fetchGraph);
+                    return querySpaces == null ? null : new HashSet<>(querySpaces);
+                case Transaction:
+                    log.info(systemRequest.type + " request has been recived!");
+                    return handleTransaction(systemRequest);
+                case Batch:
+                    log.info(systemRequest.type + " request has been recived!");
+                    return handleBatch(systemRequest);
                 default:
                     break;
             }
@@ -385,6 +758,7 @@ public class ServerSystem implements IServerStrategy {
             ex.printStackTrace();
             log.error("error accourse in request handle" + ex.getMessage());
         }
+        return null;
     }
 
 }
@@ -52,6 +52,18 @@ public final class Configuration {
                 props.getProperty("db.local.user"), props.getProperty("db.local.password"));
     }
 
+    /**
+     * Utility method that builds the connection string of the read replica using the property values: db.replica.server,
+     * db.replica.port and db.replica.database
+     *
+     * @return a connection string formatted like this: "jdbc:postgresql://localhost:5433/sportify"
+     */
+    public static String getREPLICA_DBConnection() {
+        initializeProperties();
+        return String.format("jdbc:postgresql://%s:%s/%s"
+                ,props.getProperty("db.replica.server"), props.getProperty("db.replica.port"), props.getProperty("db.replica.database"));
+    }
+
     /**
      * Load a new properties file from all configuration in the `PROPERTY_FILE`
      *
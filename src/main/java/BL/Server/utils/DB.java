@@ -1,5 +1,7 @@
 package BL.Server.utils;
 
+import BL.Communication.QueryChunk;
+import BL.Communication.SystemRequest;
 import BL.Server.ServerSystem;
 import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.Policy.ScorePolicy;
@@ -12,13 +14,39 @@ import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.query.NativeQuery;
 
 import javax.persistence.*;
 import javax.transaction.Transactional;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Description: This class contains the methods for connecting to the database, getting data,
@@ -34,6 +62,29 @@ public class DB implements Serializable {
     @PersistenceUnit
     private static EntityManagerFactory emf;
     private static DB instance;
+    /* caps the number of entity managers (and so JDBC connections) in use at the same time */
+    private static Semaphore permits;
+    private static final LongAdder permitWaits = new LongAdder();
+    private static final LongAdder permitWaitNanos = new LongAdder();
+    /* open streaming cursors by id, a cursor is used only by the connection that opened it */
+    private static final Map<Long, Cursor> cursors = new ConcurrentHashMap<>();
+    private static final AtomicLong cursorIds = new AtomicLong();
+    private static Semaphore cursorSlots;
+    private static long cursorIdleTimeout;
+    /* number of statements sent to the database in a single JDBC batch by a transaction */
+    private static int batchSize;
+    /* cached results of named queries, null if cache.enabled is off */
+    private static QueryCache queryCache;
+    /* coalesces identical queries that run at the same time, null if cache.singleFlight is off */
+    private static SingleFlight singleFlight;
+    /* hit ratios of the hibernate second level cache, null if it is off */
+    private static SecondLevelCacheMetrics secondLevelCacheMetrics;
+    /* sends reads to the read replica, null if db.replica.enabled is off */
+    private static ReplicaRouter replicaRouter;
+    /* the client of the request the current thread executes, writes and reads of a client are routed together */
+    private static final ThreadLocal<Object> session = new ThreadLocal<>();
+    private static final Map<String, Set<String>> querySpacesByQuery = new ConcurrentHashMap<>();
+    private static final List<Consumer<Collection<String>>> tableWriteListeners = new CopyOnWriteArrayList<>();
 //    public final static Logger log = LogManager.getLogger("error");
 
     /**
@@ -44,12 +95,189 @@ public class DB implements Serializable {
         if (instance == null) {
             log.removeAllAppenders();
             emf = _emf;
+            permits = new Semaphore(Integer.parseInt(Configuration.getPropertyValue("db.maxConcurrency")), true);
+            if (Boolean.parseBoolean(Configuration.getPropertyValue("cache.enabled"))) {
+                queryCache = new QueryCache(Integer.parseInt(Configuration.getPropertyValue("cache.maxEntries")),
+                        Long.parseLong(Configuration.getPropertyValue("cache.ttl")));
+            }
+            if (Boolean.parseBoolean(Configuration.getPropertyValue("cache.singleFlight"))) {
+                singleFlight = new SingleFlight();
+            }
+            if (emf.unwrap(SessionFactoryImplementor.class).getSessionFactoryOptions().isSecondLevelCacheEnabled()) {
+                secondLevelCacheMetrics = new SecondLevelCacheMetrics(emf);
+            }
+            registerTableWriteListener();
+            cursorIdleTimeout = Long.parseLong(Configuration.getPropertyValue("db.cursorIdleTimeout"));
+            cursorSlots = new Semaphore(Integer.parseInt(Configuration.getPropertyValue("db.maxCursors")));
+            batchSize = Integer.parseInt(Configuration.getPropertyValue("db.batchSize"));
+            ScheduledExecutorService cursorEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cursor-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            cursorEvictor.scheduleWithFixedDelay(DB::closeIdleCursors, cursorIdleTimeout, cursorIdleTimeout / 2, TimeUnit.MILLISECONDS);
             instance = new DB();
             log.info("Database launched and alive on: " + Configuration.getDEV_DBConnection());
         }
         return instance;
     }
 
+    /**
+     * listen to all the writes of the entity manager factory, see tablesWritten
+     */
+    private static void registerTableWriteListener() {
+        TableWriteListener listener = new TableWriteListener(DB::tablesWritten);
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+    }
+
+    /**
+     * Called after a write to the given tables was committed - invalidates the query cache and calls the
+     * write listeners (server pushed invalidations of the clients near caches)
+     *
+     * @param tables the written tables
+     */
+    private static void tablesWritten(Collection<String> tables) {
+        if (queryCache != null) queryCache.invalidate(tables);
+        if (singleFlight != null) singleFlight.detach(tables);
+        if (replicaRouter != null) replicaRouter.written(session.get(), tables);
+        for (Consumer<Collection<String>> listener : tableWriteListeners) {
+            try {
+                listener.accept(tables);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param listener called with the written tables after every committed write
+     */
+    public static void addTableWriteListener(Consumer<Collection<String>> listener) {
+        tableWriteListeners.add(listener);
+    }
+
+    /**
+     * Send the reads to a read replica, writes still go to the primary
+     *
+     * @param router routes the reads, null to read from the primary
+     */
+    public static void setReplicaRouter(ReplicaRouter router) {
+        replicaRouter = router;
+    }
+
+    /**
+     * @return the replica router, null if db.replica.enabled is off
+     */
+    public static ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    /**
+     * @param client the client of the request the current thread executes, null when the request is done
+     */
+    public static void setSession(Object client) {
+        if (client == null) session.remove();
+        else session.set(client);
+    }
+
+    /**
+     * @param querySpaces the tables the read reads, null if unknown
+     * @return the database the read should use
+     */
+    private static ReplicaRouter.Route route(Collection<String> querySpaces) {
+        return replicaRouter == null ? ReplicaRouter.Route.PRIMARY : replicaRouter.route(session.get(), querySpaces);
+    }
+
+    /**
+     * Create an entity manager, waits while db.maxConcurrency entity managers are already open
+     *
+     * @return a new entity manager, must be closed with closeEntityManager
+     */
+    private static EntityManager openEntityManager() {
+        long start = System.nanoTime();
+        permits.acquireUninterruptibly();
+        permitWaits.increment();
+        permitWaitNanos.add(System.nanoTime() - start);
+        try {
+            return emf.createEntityManager();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Create an entity manager for reads only, must be closed with closeEntityManager
+     * Its entities are read only - no snapshots are kept for dirty checking, and it never flushes, so a query
+     * doesn't need a transaction
+     *
+     * @return a new read only entity manager
+     */
+    private static EntityManager openReadOnlyEntityManager() {
+        EntityManager em = openEntityManager();
+        Session session = em.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        return em;
+    }
+
+    /**
+     * @param route the database to read
+     * @return a new read only entity manager of the database, must be closed with closeEntityManager(em, route)
+     */
+    private static EntityManager openReadOnlyEntityManager(ReplicaRouter.Route route) {
+        return route == ReplicaRouter.Route.PRIMARY ? openReadOnlyEntityManager() : replicaRouter.open();
+    }
+
+    /**
+     * Close an entity manager that was created by openEntityManager and free its permit
+     *
+     * @param em the entity manager to close
+     */
+    private static void closeEntityManager(EntityManager em) {
+        try {
+            em.close();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close an entity manager that was created by openReadOnlyEntityManager(route)
+     */
+    private static void closeEntityManager(EntityManager em, ReplicaRouter.Route route) {
+        if (route == ReplicaRouter.Route.PRIMARY) closeEntityManager(em);
+        else replicaRouter.close(em);
+    }
+
+    /**
+     * @return number of entity managers that were opened through the concurrency limit
+     */
+    public static long getPermitWaits() {
+        return permitWaits.sum();
+    }
+
+    /**
+     * @return total time (nano seconds) spent waiting for a free entity manager permit
+     */
+    public static long getPermitWaitNanos() {
+        return permitWaitNanos.sum();
+    }
+
+    /**
+     * @return number of entity managers that can be opened right now without waiting
+     */
+    public static int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
     /*
      --------------------------------------------------------------------
 
@@ -64,7 +292,7 @@ public class DB implements Serializable {
      * @param entity the entity to persists.
      */
     public static boolean persist(Object entity) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = openEntityManager();
         em.getTransaction().begin();
         try {
             em.persist(entity);
@@ -76,27 +304,41 @@ public class DB implements Serializable {
             log.warn("persist failed" + e.getMessage());
             return false;
         } finally {
-            em.close();
+            closeEntityManager(em);
             log.log(Level.INFO, "object persisted");
         }
         return true;
     }
 
     /**
-     * Persists the list of objects in the parameter to the database.
+     * Persists the list of objects in the parameter to the database, in a single transaction.
+     * The inserts are sent in JDBC batches of db.batchSize statements (ordered by entity, see hibernate.order_inserts),
+     * the persistence context is flushed and cleared after every batch so it doesn't grow with the list
      *
      * @param entities the list tof entities to persist.
      */
     public static boolean persistAll(List<?> entities) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = openEntityManager();
+        em.unwrap(Session.class).setJdbcBatchSize(batchSize);
         em.getTransaction().begin();
         try {
-            entities.forEach(em::persist);
+            int count = 0;
+            for (Object entity : entities) {
+                em.persist(entity);
+                if (++count % batchSize == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
             em.getTransaction().commit();
         } catch (Exception e) {
-            em.getTransaction().rollback();
+            e.printStackTrace();
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
             log.warn("error - rolling back" + e.getMessage());
             return false;
+        } finally {
+            closeEntityManager(em);
+            log.info(entities.size() + " objects persisted");
         }
         return true;
     }
@@ -107,7 +349,7 @@ public class DB implements Serializable {
      * @param entity the entity to remove.
      */
     public static boolean remove(Object entity) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = openEntityManager();
         em.getTransaction().begin();
         try {
             em.remove(entity);
@@ -117,7 +359,7 @@ public class DB implements Serializable {
             log.log(Level.WARN, "remove failed");
             return false;
         } finally {
-            em.close();
+            closeEntityManager(em);
             log.log(Level.INFO, "object removed");
         }
         return true;
@@ -129,7 +371,7 @@ public class DB implements Serializable {
      * @param entities the list of objects to remove from the database.
      */
     public static boolean removeAll(List<?> entities) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = openEntityManager();
         em.getTransaction().begin();
         try {
             for (Object entity : entities) {
@@ -141,7 +383,7 @@ public class DB implements Serializable {
             log.warn("error - rolling back" + e.getMessage());
             return false;
         } finally {
-            em.close();
+            closeEntityManager(em);
         }
         return true;
     }
@@ -153,7 +395,7 @@ public class DB implements Serializable {
      * @param entity the entity to update.
      */
     public static boolean merge(Object entity) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = openEntityManager();
         em.getTransaction().begin();
         try {
             entity = em.merge(entity);
@@ -164,7 +406,7 @@ public class DB implements Serializable {
             log.info("merge failed");
             return false;
         } finally {
-            em.close();
+            closeEntityManager(em);
             log.info("object merged");
         }
         return true;
@@ -178,25 +420,79 @@ public class DB implements Serializable {
      * @return true if object updated false otherwise
      */
     public static boolean update(String queryName, Object data) {
-        EntityManager em = emf.createEntityManager();
+        EntityManager em = openEntityManager();
         em.getTransaction().begin();
         HashMap<String, Object> map = (HashMap<String, Object>) data;
-        Query fixed = em.createNamedQuery(queryName);
         try {
-            fixed = getParameteredQuery(fixed, map);
+            Query fixed = getParameteredQuery(em.createNamedQuery(queryName), map);
             fixed.executeUpdate();
             em.getTransaction().commit();
+            Set<String> querySpaces = getQuerySpaces(queryName); // bulk updates don't raise entity events
+            if (querySpaces != null) tablesWritten(querySpaces);
         } catch (Exception e) {
             em.getTransaction().rollback();
             log.warn("update failed");
             return false;
         } finally {
-            em.close();
+            closeEntityManager(em);
             log.info("object updated");
         }
         return true;
     }
 
+    /**
+     * Execute all the writes in a single entity manager and a single database transaction, either all of them are
+     * committed or none. Inserts and merges are flushed in JDBC batches of db.batchSize statements, pending writes
+     * are flushed before every update query so it sees them
+     *
+     * @param writes insert, delete, merge and update requests, in the order they should be executed
+     * @return true if the transaction was committed, false if it was rolled back
+     */
+    public static boolean executeTransaction(List<SystemRequest> writes) {
+        Set<String> updatedTables = new HashSet<>();
+        EntityManager em = openEntityManager();
+        em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+        em.getTransaction().begin();
+        try {
+            for (SystemRequest write : writes) {
+                List<?> entities = write.data instanceof List ? (List<?>) write.data : Collections.singletonList(write.data);
+                switch (write.type) {
+                    case Insert:
+                        entities.forEach(em::persist);
+                        break;
+                    case Merge:
+                        entities.forEach(em::merge);
+                        break;
+                    case Delete:
+                        for (Object entity : entities) {
+                            em.remove(em.contains(entity) ? entity : em.merge(entity));
+                        }
+                        break;
+                    case Update:
+                        em.flush(); // bulk updates bypass the persistence context
+                        getParameteredQuery(em.createNamedQuery(write.queryName), (Map<?, ?>) write.data)
+                                .executeUpdate();
+                        Set<String> querySpaces = getQuerySpaces(write.queryName);
+                        if (querySpaces != null) updatedTables.addAll(querySpaces);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(write.type + " request can't be part of a transaction");
+                }
+            }
+            em.getTransaction().commit();
+            if (!updatedTables.isEmpty()) tablesWritten(updatedTables); // bulk updates don't raise entity events
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            log.warn("transaction failed - rolling back " + e.getMessage());
+            return false;
+        } finally {
+            closeEntityManager(em);
+            log.info("transaction of " + writes.size() + " requests handled");
+        }
+        return true;
+    }
+
     /**
      * @param queryName the name of the namedQuery
      * @param data      the query parameters
@@ -204,27 +500,407 @@ public class DB implements Serializable {
      */
 
     public static List query(String queryName, Object data) {
-        List resultList;
-        EntityManager em = emf.createEntityManager();
-        em.getTransaction().begin();
-        HashMap<String, Object> map = (HashMap<String, Object>) data;
-        Query fixed = em.createNamedQuery(queryName);
+        return query(queryName, data, 0, 0);
+    }
+
+    /**
+     * @param queryName   the name of the namedQuery
+     * @param data        the query parameters
+     * @param firstResult index of the first row to return
+     * @param maxResults  max number of rows to return, 0 - all the rows
+     * @return a results list
+     */
+    public static List<?> query(String queryName, Object data, int firstResult, int maxResults) {
+        return query(queryName, data, firstResult, maxResults, null);
+    }
+
+    /**
+     * @param queryName   the name of the namedQuery
+     * @param data        the query parameters
+     * @param firstResult index of the first row to return
+     * @param maxResults  max number of rows to return, 0 - all the rows
+     * @param fetchGraph  entity graph of the associations to load, null to load all of them (see FetchPlan)
+     * @return a results list
+     */
+    public static List<?> query(String queryName, Object data, int firstResult, int maxResults, String fetchGraph) {
+        return query(queryName, data, firstResult, maxResults, fetchGraph, route(getQuerySpaces(queryName, fetchGraph)));
+    }
+
+    /**
+     * Run the query on the database of the route
+     */
+    private static List<?> query(String queryName, Object data, int firstResult, int maxResults, String fetchGraph,
+                                 ReplicaRouter.Route route) {
+        List<?> resultList;
+        EntityManager em = openReadOnlyEntityManager(route);
+        Map<?, ?> map = (Map<?, ?>) data;
         try {
-            fixed = getParameteredQuery(fixed, map);
+            Query fixed = getParameteredQuery(em.createNamedQuery(queryName), map);
+            if (firstResult > 0) fixed.setFirstResult(firstResult);
+            if (maxResults > 0) fixed.setMaxResults(maxResults);
             resultList = fixed.getResultList();
-            em.getTransaction().commit();
+            FetchPlan.load(em, resultList, fetchGraph);
         } catch (Exception e) {
             e.printStackTrace();
-            em.getTransaction().rollback();
             log.warn("query failed");
             return null;
         } finally {
-            em.close();
+            closeEntityManager(em, route);
             log.info("query results returned");
         }
         return resultList;
     }
 
+    /**
+     * Query through the query cache, the result is shared by all the requests with the same key and must not be
+     * changed. Identical queries that run at the same time are executed once (see SingleFlight).
+     * Queries with parameters that can't be compared by value (not entities nor simple values) and native
+     * queries are not cached nor coalesced, neither are results of a replica that is behind (see ReplicaRouter)
+     *
+     * @param queryName   the name of the namedQuery
+     * @param data        the query parameters
+     * @param firstResult index of the first row to return
+     * @param maxResults  max number of rows to return, 0 - all the rows
+     * @param fetchGraph  entity graph of the associations to load, null to load all of them (see FetchPlan)
+     * @return a results list
+     */
+    public static List<?> cachedQuery(String queryName, Object data, int firstResult, int maxResults, String fetchGraph) {
+        if (queryCache == null && singleFlight == null) return query(queryName, data, firstResult, maxResults, fetchGraph);
+        // results loaded by different graphs are different results
+        String resultName = fetchGraph == null ? queryName : queryName + "/" + fetchGraph;
+        QueryCache.Key key = cacheKey(resultName, (Map<?, ?>) data, firstResult, maxResults);
+        Set<String> querySpaces = key == null ? null : getQuerySpaces(queryName, fetchGraph);
+        if (querySpaces == null) return query(queryName, data, firstResult, maxResults, fetchGraph);
+
+        long epoch = 0;
+        if (queryCache != null) {
+            epoch = queryCache.epoch();
+            List<?> cached = (List<?>) queryCache.get(key);
+            if (cached != null) return cached;
+        }
+
+        ReplicaRouter.Route route = route(querySpaces);
+        if (route == ReplicaRouter.Route.STALE_REPLICA) return query(queryName, data, firstResult, maxResults, fetchGraph, route);
+
+        long startEpoch = epoch;
+        Supplier<Object> execute = () -> {
+            List<?> resultList = query(queryName, data, firstResult, maxResults, fetchGraph, route);
+            if (resultList != null && queryCache != null) queryCache.put(key, querySpaces, startEpoch, resultList);
+            return resultList;
+        };
+        return (List<?>) (singleFlight == null ? execute.get() : singleFlight.execute(key, querySpaces, execute));
+    }
+
+    /**
+     * @return the query cache, null if cache.enabled is off
+     */
+    public static QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @return hit ratios of the second level cache, null if cache.secondLevel is off
+     */
+    public static SecondLevelCacheMetrics getSecondLevelCacheMetrics() {
+        return secondLevelCacheMetrics;
+    }
+
+    /**
+     * @return the query coalescer, null if cache.singleFlight is off
+     */
+    public static SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * @return key of the query, entity parameters are replaced by their class and id, null if a parameter
+     * can't be compared by value
+     */
+    private static QueryCache.Key cacheKey(String queryName, Map<?, ?> parameters, int firstResult, int maxResults) {
+        HashMap<String, Object> values = new HashMap<>();
+        if (parameters != null) {
+            for (Map.Entry<?, ?> parameter : parameters.entrySet()) {
+                Object value = parameter.getValue();
+                if (!(value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                        || value instanceof Character || value instanceof Date || value instanceof Enum)) {
+                    Object id;
+                    try {
+                        id = emf.getPersistenceUnitUtil().getIdentifier(value);
+                    } catch (IllegalArgumentException e) {
+                        return null; // not an entity
+                    }
+                    if (id == null) return null;
+                    value = Hibernate.getClass(value).getName() + "#" + id;
+                }
+                values.put((String) parameter.getKey(), value);
+            }
+        }
+        return new QueryCache.Key(queryName, values, firstResult, maxResults);
+    }
+
+    /**
+     * @param queryName the name of the namedQuery
+     * @return the tables read or written by the query, null for native queries and unknown names
+     */
+    public static Set<String> getQuerySpaces(String queryName) {
+        return getQuerySpaces(queryName, false, null);
+    }
+
+    /**
+     * @param queryName  the name of the namedQuery
+     * @param fetchGraph entity graph of the associations the results load, null if all of them are loaded
+     * @return the tables read by the query and by the associations of its results (see FetchPlan.querySpaces),
+     * null for native queries, unknown names and unknown graphs
+     */
+    public static Set<String> getQuerySpaces(String queryName, String fetchGraph) {
+        return getQuerySpaces(queryName, true, fetchGraph);
+    }
+
+    /**
+     * @param loaded true to add the tables of the associations the results load
+     */
+    private static Set<String> getQuerySpaces(String queryName, boolean loaded, String fetchGraph) {
+        String key = loaded ? queryName + "/" + (fetchGraph == null ? "*" : fetchGraph) : queryName;
+        Set<String> querySpaces = querySpacesByQuery.computeIfAbsent(key, k -> {
+            String hql = getQueryString(queryName);
+            if (hql == null) return Collections.emptySet();
+            SessionFactoryImplementor factory = emf.unwrap(SessionFactoryImplementor.class);
+            HQLQueryPlan plan = new HQLQueryPlan(hql, false, Collections.emptyMap(), factory);
+            Set<String> tables = new HashSet<>();
+            for (Object querySpace : plan.getQuerySpaces()) tables.add(querySpace.toString());
+            if (!loaded) return tables;
+            Set<String> loadedTables = FetchPlan.querySpaces(factory, plan.getReturnMetadata() == null ? null
+                    : plan.getReturnMetadata().getReturnTypes(), tables, fetchGraph);
+            return loadedTables == null ? Collections.emptySet() : loadedTables;
+        });
+        return querySpaces.isEmpty() ? null : querySpaces;
+    }
+
+    /**
+     * @return the JPQL of the named query, null for native queries and unknown names
+     */
+    private static String getQueryString(String queryName) {
+        // creating a query doesn't use a JDBC connection, so the entity manager doesn't take a permit
+        EntityManager em = emf.createEntityManager();
+        try {
+            org.hibernate.query.Query<?> query = em.createNamedQuery(queryName).unwrap(org.hibernate.query.Query.class);
+            return query instanceof NativeQuery ? null : query.getQueryString();
+        } catch (IllegalArgumentException e) {
+            return null; // no such query
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Run several named queries in a single read only entity manager
+     *
+     * @param queryNames the names of the namedQueries
+     * @param data       the parameters of every query, in the same order
+     * @return the results list of every query in the same order, null if one of them failed
+     */
+    public static List<List<?>> queryBatch(List<String> queryNames, List<?> data) {
+        List<List<?>> results = new ArrayList<>(queryNames.size());
+        Set<String> querySpaces = new HashSet<>();
+        for (String queryName : queryNames) {
+            Set<String> tables = getQuerySpaces(queryName, null);
+            if (tables == null) {
+                querySpaces = null; // unknown tables
+                break;
+            }
+            querySpaces.addAll(tables);
+        }
+        ReplicaRouter.Route route = route(querySpaces);
+        EntityManager em = openReadOnlyEntityManager(route);
+        try {
+            for (int i = 0; i < queryNames.size(); i++) {
+                Query fixed = getParameteredQuery(em.createNamedQuery(queryNames.get(i)), (Map<?, ?>) data.get(i));
+                List<?> resultList = fixed.getResultList();
+                FetchPlan.load(em, resultList, null);
+                results.add(resultList);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            log.warn("query batch failed");
+            return null;
+        } finally {
+            closeEntityManager(em, route);
+            log.info("query batch results returned");
+        }
+        return results;
+    }
+
+    /**
+     * Open a forward only cursor on a named query and read its first chunk
+     * the cursor keeps its entity manager (and JDBC connection) until the last chunk is read, it is closed,
+     * its connection is closed (see closeCursors) or it is not used for db.cursorIdleTimeout ms
+     *
+     * @param queryName the name of the namedQuery
+     * @param data      the query parameters
+     * @param chunkSize number of rows in every chunk
+     * @param owner     the client connection that reads the cursor
+     * @return the first chunk, null if the query failed or db.maxCursors cursors are already open
+     */
+    public static QueryChunk openCursor(String queryName, Object data, int chunkSize, Object owner) {
+        if (!cursorSlots.tryAcquire()) {
+            log.warn("too many open cursors, " + queryName + " was not streamed");
+            return null;
+        }
+        EntityManager em = openReadOnlyEntityManager();
+        em.getTransaction().begin(); // the postgres driver streams rows by the fetch size only inside a transaction
+        try {
+            org.hibernate.query.Query<?> fixed = getParameteredQuery(em.createNamedQuery(queryName), (Map<?, ?>) data)
+                    .unwrap(org.hibernate.query.Query.class);
+            fixed.setReadOnly(true);
+            fixed.setFetchSize(chunkSize);
+            Cursor cursor = new Cursor(cursorIds.incrementAndGet(), owner, em, fixed.scroll(ScrollMode.FORWARD_ONLY), chunkSize);
+            cursors.put(cursor.id, cursor);
+            log.info("cursor " + cursor.id + " opened on " + queryName);
+            return fetch(cursor.id, owner);
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            closeEntityManager(em);
+            cursorSlots.release();
+            log.warn("open cursor failed");
+            return null;
+        }
+    }
+
+    /**
+     * @return the open cursor with the given id, null if there is none or it belongs to another connection
+     */
+    private static Cursor getCursor(long cursorId, Object owner) {
+        Cursor cursor = cursors.get(cursorId);
+        if (cursor == null || cursor.owner != owner) {
+            log.warn("cursor " + cursorId + " is not open");
+            return null;
+        }
+        return cursor;
+    }
+
+    /**
+     * Read the next chunk of an open cursor, the cursor is closed after its last chunk
+     *
+     * @param cursorId id of the cursor
+     * @param owner    the client connection that opened the cursor
+     * @return the next chunk, null if there is no such cursor or reading failed
+     */
+    public static QueryChunk fetch(long cursorId, Object owner) {
+        Cursor cursor = getCursor(cursorId, owner);
+        if (cursor == null) return null;
+        synchronized (cursor) {
+            try {
+                List<Object> rows = new ArrayList<>(cursor.chunkSize);
+                boolean last = false;
+                while (rows.size() < cursor.chunkSize) {
+                    if (!cursor.results.next()) {
+                        last = true;
+                        break;
+                    }
+                    Object[] row = cursor.results.get();
+                    rows.add(row.length == 1 ? row[0] : row);
+                }
+                FetchPlan.load(cursor.em, rows, null);
+                cursor.em.clear(); // the rows were handed out, don't keep them in the persistence context
+                cursor.lastUsed = System.currentTimeMillis();
+                if (last) closeCursor(cursor);
+                return new QueryChunk(cursorId, rows, last);
+            } catch (Exception e) {
+                e.printStackTrace();
+                closeCursor(cursor);
+                log.warn("fetch failed");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Close an open cursor and free its entity manager
+     *
+     * @param cursorId id of the cursor
+     * @param owner    the client connection that opened the cursor
+     * @return true if the cursor was open
+     */
+    public static boolean closeCursor(long cursorId, Object owner) {
+        Cursor cursor = getCursor(cursorId, owner);
+        return cursor != null && closeCursor(cursor);
+    }
+
+    /**
+     * Close all the open cursors of a client connection, when the connection is closed
+     *
+     * @param owner the client connection
+     * @return number of cursors that were closed
+     */
+    public static int closeCursors(Object owner) {
+        int closed = 0;
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.owner == owner && closeCursor(cursor)) closed++;
+        }
+        return closed;
+    }
+
+    /**
+     * @return true if the cursor was open
+     */
+    private static boolean closeCursor(Cursor cursor) {
+        if (!cursors.remove(cursor.id, cursor)) return false;
+        synchronized (cursor) {
+            try {
+                cursor.results.close();
+                if (cursor.em.getTransaction().isActive()) cursor.em.getTransaction().commit();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                closeEntityManager(cursor.em);
+                cursorSlots.release();
+                log.info("cursor " + cursor.id + " closed");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of cursors that are open right now
+     */
+    public static int getOpenCursors() {
+        return cursors.size();
+    }
+
+    /**
+     * close all the cursors that were not used for cursorIdleTimeout ms (the client is gone or forgot them)
+     */
+    private static void closeIdleCursors() {
+        long now = System.currentTimeMillis();
+        for (Cursor cursor : cursors.values()) {
+            if (now - cursor.lastUsed > cursorIdleTimeout) {
+                log.warn("cursor " + cursor.id + " was idle for too long");
+                closeCursor(cursor);
+            }
+        }
+    }
+
+    /**
+     * An open scrollable result, with the entity manager that holds its connection
+     */
+    private static class Cursor {
+        private final long id;
+        private final Object owner;
+        private final EntityManager em;
+        private final ScrollableResults results;
+        private final int chunkSize;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Cursor(long id, Object owner, EntityManager em, ScrollableResults results, int chunkSize) {
+            this.id = id;
+            this.owner = owner;
+            this.em = em;
+            this.results = results;
+            this.chunkSize = chunkSize;
+        }
+    }
+
     // Query methods -------------------------------------------------------------------------------
 
     /**
@@ -234,15 +910,15 @@ public class DB implements Serializable {
      * @param filterMap - parameters map <attribute , value>
      * @return - fixed query filled with the @params
      */
-    public static Query getParameteredQuery(Query q, HashMap<String, Object> filterMap) {
+    public static Query getParameteredQuery(Query q, Map<?, ?> filterMap) {
         if (filterMap != null && !filterMap.isEmpty()) {
             filterMap.keySet().forEach(column -> {
                 if (filterMap.get(column) instanceof String) {
                     String value = (String) filterMap.get(column);
 //                    q.setParameter(column, value.toUpperCase() + "%");
-                    q.setParameter(column, value);
+                    q.setParameter((String) column, value);
                 } else {
-                    q.setParameter(column, filterMap.get(column));
+                    q.setParameter((String) column, filterMap.get(column));
                 }
             });
         }
@@ -250,8 +926,8 @@ public class DB implements Serializable {
     }
 
     public static void main(String[] args) {
-        emf = ServerSystem
-                .createEntityManagerFactory(ServerSystem.DbSelector.TEST, ServerSystem.Strategy.NONE);
+        getDataBaseInstance(ServerSystem
+                .createEntityManagerFactory(ServerSystem.DbSelector.TEST, ServerSystem.Strategy.NONE));
         EntityTransaction txn;
         EntityManager em = emf.createEntityManager();
         txn = em.getTransaction();
@@ -309,15 +985,16 @@ public class DB implements Serializable {
      * @return a particular entity from the DB
      */
     public Object getEntity(String object, int id) {
-        EntityManager em = emf.createEntityManager();
-        //Begin Transaction
-        em.getTransaction().begin();
-
-        String queryString = "SELECT o FROM " + object
-                + " o WHERE o.id = "
-                + id;
-        TypedQuery<Object> query = em.createQuery(queryString, Object.class);
-        return query.getSingleResult();
+        EntityManager em = openEntityManager();
+        try {
+            String queryString = "SELECT o FROM " + object
+                    + " o WHERE o.id = "
+                    + id;
+            TypedQuery<Object> query = em.createQuery(queryString, Object.class);
+            return query.getSingleResult();
+        } finally {
+            closeEntityManager(em);
+        }
     }
 
 //  /* Simple manual tests ------------------------------------------------------------------------------- */
@@ -330,9 +1007,13 @@ public class DB implements Serializable {
      * @return number of records
      */
     public Long getCount(Class entityClass) {
-        EntityManager em = emf.createEntityManager();
-        Query q = em.createQuery(
-                "select count(e) from " + entityClass.getName() + " e ");
-        return (Long) q.getSingleResult();
+        EntityManager em = openEntityManager();
+        try {
+            Query q = em.createQuery(
+                    "select count(e) from " + entityClass.getName() + " e ");
+            return (Long) q.getSingleResult();
+        } finally {
+            closeEntityManager(em);
+        }
     }
 }
\ No newline at end of file
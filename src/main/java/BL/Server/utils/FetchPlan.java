@@ -0,0 +1,352 @@
+package BL.Server.utils;
+
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.CompositeType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+import javax.persistence.AttributeNode;
+import javax.persistence.ElementCollection;
+import javax.persistence.Embeddable;
+import javax.persistence.Entity;
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.FetchType;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Subgraph;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description:     Loads the associations of query results before their entity manager is closed
+ *                  All the collections are mapped lazy, a query chooses what is loaded:
+ *                  * no fetch graph - everything reachable from the results is loaded, the client gets the
+ *                    complete entities it always got
+ *                  * a fetch graph (the name of a @NamedEntityGraph) - only the attributes of the graph are
+ *                    loaded, anything else stays uninitialized and must not be used by the client
+ *                  Collections are initialized one by one, hibernate loads the uninitialized collections of the
+ *                  same role together (hibernate.default_batch_fetch_size), so there are no join fetches of
+ *                  several bags and no select per entity
+ *                  The tables a plan reads (see querySpaces) are known from the mapping, a cached result is stale
+ *                  after a write to any of them, not only to the tables of its query
+ **/
+public final class FetchPlan
+{
+    private static final Map<Class<?>, List<Field>> associations = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<String, Field>> fieldsByName = new ConcurrentHashMap<>();
+
+    private FetchPlan() {}
+
+    /**
+     * Load the results of a query by the fetch graph
+     * @param em - the entity manager that loaded the results, must be open
+     * @param results - query results, entities or rows of entities
+     * @param fetchGraph - name of an entity graph, null to load everything
+     * @throws IllegalArgumentException if there is no such entity graph
+     */
+    public static void load(EntityManager em, Collection<?> results, String fetchGraph)
+    {
+        if(results == null || results.isEmpty()) return;
+        if(fetchGraph == null)
+        {
+            loadAll(results);
+            return;
+        }
+
+        EntityGraph<?> graph = em.getEntityGraph(fetchGraph);
+        for(Object result : results)
+        {
+            if(result instanceof Object[])
+            {
+                for(Object column : (Object[]) result) loadGraph(column, graph.getAttributeNodes());
+            }
+            else loadGraph(result, graph.getAttributeNodes());
+        }
+    }
+
+    /**
+     * The tables read by a query and by the associations its results load - the associations of the fetch graph
+     * (or all of them) and the eager ones
+     * @param factory - the session factory of the query
+     * @param returnTypes - types of the columns of the query results, null if it returns no rows
+     * @param querySpaces - the tables the query reads
+     * @param fetchGraph - name of the entity graph the results are loaded by, null - everything is loaded
+     * @return the tables, null if there is no such entity graph
+     */
+    public static Set<String> querySpaces(SessionFactoryImplementor factory, Type[] returnTypes,
+                                          Collection<?> querySpaces, String fetchGraph)
+    {
+        Set<String> tables = new HashSet<>();
+        for(Object querySpace : querySpaces) tables.add(querySpace.toString());
+        if(returnTypes == null) return tables;
+
+        List<AttributeNode<?>> nodes = null;
+        if(fetchGraph != null)
+        {
+            EntityGraph<?> graph = factory.findEntityGraphByName(fetchGraph);
+            if(graph == null) return null;
+            nodes = graph.getAttributeNodes();
+        }
+        Set<String> visited = new HashSet<>();
+        for(Type type : returnTypes) addTables(factory.getMetamodel(), type, nodes, tables, visited);
+        return tables;
+    }
+
+    /**
+     * add the tables loaded with a value of the type
+     * @param nodes - the attributes of the value that are loaded (besides the eager ones), null - all of them
+     * @param visited - entities whose tables were added with all their associations, or only the eager ones
+     */
+    private static void addTables(MetamodelImplementor metamodel, Type type, List<AttributeNode<?>> nodes,
+                                  Set<String> tables, Set<String> visited)
+    {
+        if(type.isEntityType())
+        {
+            String entityName = ((EntityType) type).getAssociatedEntityName();
+            if(nodes == null || nodes.isEmpty())
+            {
+                if(!visited.add(entityName + (nodes == null ? "/*" : ""))) return;
+            }
+            addEntityTables(metamodel, metamodel.entityPersister(entityName), nodes, tables, visited);
+        }
+        else if(type.isCollectionType())
+        {
+            CollectionPersister persister = metamodel.collectionPersister(((CollectionType) type).getRole());
+            for(Serializable space : persister.getCollectionSpaces()) tables.add(space.toString());
+            if(persister.getIndexType() != null) addTables(metamodel, persister.getIndexType(), nodes, tables, visited);
+            addTables(metamodel, persister.getElementType(), nodes, tables, visited);
+        }
+        else if(type.isComponentType())
+        {
+            for(Type subtype : ((CompositeType) type).getSubtypes()) addTables(metamodel, subtype, nodes, tables, visited);
+        }
+    }
+
+    /**
+     * add the tables of the entity and its subclasses, and of their loaded associations
+     */
+    private static void addEntityTables(MetamodelImplementor metamodel, EntityPersister root,
+                                        List<AttributeNode<?>> nodes, Set<String> tables, Set<String> visited)
+    {
+        for(Object entityName : root.getEntityMetamodel().getSubclassEntityNames())
+        {
+            EntityPersister persister = metamodel.entityPersister((String) entityName);
+            for(Serializable space : persister.getQuerySpaces()) tables.add(space.toString());
+            String[] names = persister.getPropertyNames();
+            Type[] types = persister.getPropertyTypes();
+            for(int i = 0; i < names.length; i++)
+            {
+                if(nodes == null)
+                {
+                    addTables(metamodel, types[i], null, tables, visited);
+                    continue;
+                }
+                AttributeNode<?> node = nodeOf(nodes, names[i]);
+                if(node != null)
+                {
+                    List<AttributeNode<?>> subNodes = new ArrayList<>();
+                    for(Subgraph<?> subgraph : node.getSubgraphs().values()) subNodes.addAll(subgraph.getAttributeNodes());
+                    addTables(metamodel, types[i], subNodes, tables, visited);
+                }
+                else if(isEager(persister.getMappedClass(), names[i]))
+                {
+                    addTables(metamodel, types[i], Collections.emptyList(), tables, visited);
+                }
+            }
+        }
+    }
+
+    private static AttributeNode<?> nodeOf(List<AttributeNode<?>> nodes, String attributeName)
+    {
+        for(AttributeNode<?> node : nodes) if(node.getAttributeName().equals(attributeName)) return node;
+        return null;
+    }
+
+    /**
+     * @return true if the association is loaded with its entity, an association without a mapping annotation
+     * (an embedded value) is loaded with it too
+     */
+    private static boolean isEager(Class<?> type, String attributeName)
+    {
+        Field field = fieldOf(type, attributeName);
+        if(field == null) return true;
+        if(field.isAnnotationPresent(ManyToOne.class)) return field.getAnnotation(ManyToOne.class).fetch() == FetchType.EAGER;
+        if(field.isAnnotationPresent(OneToOne.class)) return field.getAnnotation(OneToOne.class).fetch() == FetchType.EAGER;
+        if(field.isAnnotationPresent(OneToMany.class)) return field.getAnnotation(OneToMany.class).fetch() == FetchType.EAGER;
+        if(field.isAnnotationPresent(ManyToMany.class)) return field.getAnnotation(ManyToMany.class).fetch() == FetchType.EAGER;
+        if(field.isAnnotationPresent(ElementCollection.class)) return field.getAnnotation(ElementCollection.class).fetch() == FetchType.EAGER;
+        return true;
+    }
+
+    /**
+     * initialize the attributes of the graph, and the attributes of their subgraphs
+     */
+    private static void loadGraph(Object entity, List<AttributeNode<?>> nodes)
+    {
+        if(entity == null || nodes.isEmpty()) return;
+        entity = unproxy(entity);
+        for(AttributeNode<?> node : nodes)
+        {
+            Object value = get(entity, node.getAttributeName());
+            if(value == null) continue;
+            Hibernate.initialize(value);
+
+            List<AttributeNode<?>> subNodes = new ArrayList<>();
+            for(Subgraph<?> subgraph : node.getSubgraphs().values()) subNodes.addAll(subgraph.getAttributeNodes());
+            if(subNodes.isEmpty()) continue;
+            for(Object element : elements(value)) loadGraph(element, subNodes);
+        }
+    }
+
+    /**
+     * initialize every association reachable from the roots
+     */
+    private static void loadAll(Collection<?> roots)
+    {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        enqueue(pending, roots);
+        while (!pending.isEmpty())
+        {
+            Object value = pending.poll();
+            if(!visited.add(value)) continue;
+            if(value instanceof HibernateProxy || value instanceof Collection || value instanceof Map)
+            {
+                Hibernate.initialize(value);
+                enqueue(pending, elements(value));
+            }
+            else if(value instanceof Object[])
+            {
+                enqueue(pending, Arrays.asList((Object[]) value));
+            }
+            else
+            {
+                for(Field field : associationsOf(value.getClass()))
+                {
+                    Object association = read(field, value);
+                    if(association != null) pending.add(association);
+                }
+            }
+        }
+    }
+
+    /**
+     * add the values that are set, unset associations (null) have nothing to load
+     */
+    private static void enqueue(Deque<Object> pending, Collection<?> values)
+    {
+        for(Object value : values) if(value != null) pending.add(value);
+    }
+
+    /**
+     * @return the entities in a loaded value - the elements of a collection, the keys and values of a map
+     */
+    private static Collection<?> elements(Object value)
+    {
+        if(value instanceof HibernateProxy) return Collections.singletonList(unproxy(value));
+        if(value instanceof Collection) return (Collection<?>) value;
+        if(value instanceof Map)
+        {
+            List<Object> entries = new ArrayList<>(((Map<?, ?>) value).keySet());
+            entries.addAll(((Map<?, ?>) value).values());
+            return entries;
+        }
+        return Collections.singletonList(value);
+    }
+
+    private static Object unproxy(Object value)
+    {
+        return value instanceof HibernateProxy ?
+                ((HibernateProxy) value).getHibernateLazyInitializer().getImplementation() : value;
+    }
+
+    /**
+     * @return the fields of a mapped class that may hold other entities, empty for classes that are not mapped
+     */
+    private static List<Field> associationsOf(Class<?> type)
+    {
+        return associations.computeIfAbsent(type, t -> {
+            List<Field> fields = new ArrayList<>();
+            for(Class<?> c = t; c != null && c != Object.class; c = c.getSuperclass())
+            {
+                if(!c.isAnnotationPresent(Entity.class) && !c.isAnnotationPresent(MappedSuperclass.class)
+                        && !c.isAnnotationPresent(Embeddable.class)) continue;
+                for(Field field : c.getDeclaredFields())
+                {
+                    int modifiers = field.getModifiers();
+                    if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                    Class<?> fieldType = field.getType();
+                    if(fieldType.isPrimitive() || fieldType.isEnum() || fieldType == String.class
+                            || Number.class.isAssignableFrom(fieldType) || fieldType == Boolean.class
+                            || java.util.Date.class.isAssignableFrom(fieldType)) continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return fields;
+        });
+    }
+
+    /**
+     * @return value of the attribute of the entity, null if it has no such field
+     */
+    private static Object get(Object entity, String attributeName)
+    {
+        Field field = fieldOf(entity.getClass(), attributeName);
+        return field == null ? null : read(field, entity);
+    }
+
+    /**
+     * @return the field of the class (or its superclasses) with the name, null if it has no such field
+     */
+    private static Field fieldOf(Class<?> type, String name)
+    {
+        return fieldsByName.computeIfAbsent(type, t -> {
+            Map<String, Field> fields = new ConcurrentHashMap<>();
+            for(Class<?> c = t; c != null && c != Object.class; c = c.getSuperclass())
+            {
+                for(Field f : c.getDeclaredFields())
+                {
+                    f.setAccessible(true);
+                    fields.putIfAbsent(f.getName(), f);
+                }
+            }
+            return fields;
+        }).get(name);
+    }
+
+    private static Object read(Field field, Object entity)
+    {
+        try
+        {
+            return field.get(entity);
+        }
+        catch (IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+}
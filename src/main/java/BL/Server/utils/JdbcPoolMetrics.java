@@ -0,0 +1,135 @@
+package BL.Server.utils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:     Gauges and counters of the JDBC connection pool
+ *                  Attached to the pool of the entity manager factory by register, the counters are static - there
+ *                  is a single pool per server
+ *                  * gauges - active, idle, total connections and threads waiting for a connection
+ *                  * counters - connections handed out, time waiting for them, time they were used and timeouts
+ **/
+public class JdbcPoolMetrics implements MetricsTrackerFactory
+{
+    private static volatile PoolStats poolStats;
+    private static final LongAdder acquisitions = new LongAdder();
+    private static final LongAdder acquireNanos = new LongAdder();
+    private static final LongAdder usageMillis = new LongAdder();
+    private static final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Track the connection pool of the entity manager factory, nothing is tracked if it doesn't use HikariCP
+     * @param emf - entity manager factory
+     */
+    public static void register(EntityManagerFactory emf)
+    {
+        ConnectionProvider connectionProvider = emf.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if(connectionProvider != null && connectionProvider.isUnwrappableAs(HikariDataSource.class))
+        {
+            connectionProvider.unwrap(HikariDataSource.class).setMetricsTrackerFactory(new JdbcPoolMetrics());
+        }
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats stats)
+    {
+        poolStats = stats;
+        return new IMetricsTracker()
+        {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos)
+            {
+                acquisitions.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis)
+            {
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout()
+            {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * @return true if the pool was created
+     */
+    public static boolean isActive()
+    {
+        return poolStats != null;
+    }
+
+    public static int getActiveConnections()
+    {
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    public static int getIdleConnections()
+    {
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    public static int getTotalConnections()
+    {
+        return poolStats == null ? 0 : poolStats.getTotalConnections();
+    }
+
+    public static int getPendingThreads()
+    {
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+
+    public static long getAcquisitions()
+    {
+        return acquisitions.sum();
+    }
+
+    public static long getTimeouts()
+    {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return average time (ms) a request waited for a connection
+     */
+    public static double getAverageWaitMillis()
+    {
+        long count = getAcquisitions();
+        return count == 0 ? 0 : acquireNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return average time (ms) a connection was used before it was returned to the pool
+     */
+    public static double getAverageUsageMillis()
+    {
+        long count = getAcquisitions();
+        return count == 0 ? 0 : (double) usageMillis.sum() / count;
+    }
+
+    /**
+     * @return a single line with all the gauges and counters
+     */
+    public static String snapshot()
+    {
+        return String.format("jdbcPool active=%d idle=%d total=%d waiting=%d acquired=%d avgWait=%.2fms avgUsage=%.2fms timeouts=%d",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), getPendingThreads(),
+                getAcquisitions(), getAverageWaitMillis(), getAverageUsageMillis(), getTimeouts());
+    }
+}
@@ -0,0 +1,210 @@
+package BL.Server.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:     Bounded LRU cache of named query results with a time to live
+ *                  Every entry remembers the query spaces (tables) its query reads, a write to one of those tables
+ *                  invalidates the entry. A result is not cached if a write happened while its query was running,
+ *                  so a result read before a commit never outlives the commit
+ **/
+public class QueryCache
+{
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final AtomicLong epoch = new AtomicLong();
+    private final Map<String, Long> lastInvalidated = new HashMap<>(); // table -> epoch of its last write
+    private long lastInvalidatedAll = -1;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructor
+     * @param maxEntries - max number of cached results, the least recently used is evicted
+     * @param ttl - time (ms) a result stays in the cache
+     */
+    public QueryCache(int maxEntries, long ttl)
+    {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                boolean evict = size() > QueryCache.this.maxEntries;
+                if(evict) evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * @return the current epoch, read it before running a query and pass it to put
+     */
+    public long epoch()
+    {
+        return epoch.get();
+    }
+
+    /**
+     * @param key - key of the query
+     * @return the cached result, null if there is no valid one
+     */
+    public synchronized Object get(Key key)
+    {
+        Entry entry = entries.get(key);
+        if(entry != null && System.currentTimeMillis() - entry.created > ttl)
+        {
+            entries.remove(key);
+            evictions.increment();
+            entry = null;
+        }
+        if(entry == null) misses.increment();
+        else hits.increment();
+        return entry == null ? null : entry.result;
+    }
+
+    /**
+     * @param key - key of the query
+     * @param querySpaces - tables the query reads
+     * @param startEpoch - epoch read before the query was executed
+     * @param result - result of the query
+     */
+    public synchronized void put(Key key, Set<String> querySpaces, long startEpoch, Object result)
+    {
+        if(lastInvalidatedAll > startEpoch) return;
+        for(String querySpace : querySpaces)
+        {
+            Long invalidated = lastInvalidated.get(querySpace);
+            if(invalidated != null && invalidated > startEpoch) return; // a write committed while the query was running
+        }
+        entries.put(key, new Entry(querySpaces, result));
+    }
+
+    /**
+     * Remove all the results that read one of the given tables
+     * @param querySpaces - tables that were written
+     */
+    public synchronized void invalidate(Collection<String> querySpaces)
+    {
+        long current = epoch.incrementAndGet();
+        for(String querySpace : querySpaces) lastInvalidated.put(querySpace, current);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext())
+        {
+            if(!Collections.disjoint(iterator.next().querySpaces, querySpaces))
+            {
+                iterator.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove all the results, results of queries that are running now are not cached
+     */
+    public synchronized void invalidateAll()
+    {
+        lastInvalidatedAll = epoch.incrementAndGet();
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    public long getInvalidations()
+    {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return a single line with all the counters
+     */
+    public String snapshot()
+    {
+        long hitCount = getHits();
+        long total = Math.max(1, hitCount + getMisses());
+        return String.format("queryCache size=%d hits=%d misses=%d hitRatio=%.2f evictions=%d invalidations=%d",
+                size(), hitCount, getMisses(), (double) hitCount / total, getEvictions(), getInvalidations());
+    }
+
+    /**
+     * Key of a query - name, parameters and paging
+     * parameter values must have a value based equals (entities are replaced by their class and id)
+     */
+    public static final class Key
+    {
+        private final String queryName;
+        private final Map<String, Object> parameters;
+        private final int firstResult;
+        private final int maxResults;
+
+        public Key(String queryName, Map<String, Object> parameters, int firstResult, int maxResults)
+        {
+            this.queryName = queryName;
+            this.parameters = parameters;
+            this.firstResult = firstResult;
+            this.maxResults = maxResults;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return firstResult == key.firstResult && maxResults == key.maxResults &&
+                    queryName.equals(key.queryName) && Objects.equals(parameters, key.parameters);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(queryName, parameters, firstResult, maxResults);
+        }
+    }
+
+    private static class Entry
+    {
+        private final Set<String> querySpaces;
+        private final Object result;
+        private final long created = System.currentTimeMillis();
+
+        Entry(Set<String> querySpaces, Object result)
+        {
+            this.querySpaces = querySpaces;
+            this.result = result;
+        }
+    }
+}
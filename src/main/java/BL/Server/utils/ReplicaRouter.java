@@ -0,0 +1,235 @@
+package BL.Server.utils;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:     Chooses the database of every read - the primary or a read replica
+ *                  The replica lag is measured every lagCheckInterval ms (lagQuery, run on the replica), so the
+ *                  replica is known to have every commit up to some time (replicaTime). A read goes to:
+ *                  * the replica - if every table it reads was last written before replicaTime, the replica has
+ *                    the same rows as the primary and the result may be cached and shared
+ *                  * the primary - if the session (client) wrote after replicaTime, so it reads its own writes,
+ *                    or if the replica is more than maxStaleness ms behind
+ *                  * the replica, stale - otherwise, the result may miss the last maxStaleness ms of writes of other
+ *                    sessions and is not cached nor shared
+ **/
+public class ReplicaRouter
+{
+    public enum Route
+    {
+        PRIMARY, REPLICA, STALE_REPLICA
+    }
+
+    private final EntityManagerFactory replica;
+    private final Semaphore permits;
+    private final long maxStaleness;
+    private final String lagQuery;
+    private volatile long replicaTime; // every commit before this time is on the replica
+    private final Map<String, Long> tableWrites = new ConcurrentHashMap<>(); // table -> time of its last commit
+    private final Map<Object, Long> sessionWrites = new ConcurrentHashMap<>(); // session -> time of its last commit
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+    private final LongAdder ownWriteReads = new LongAdder();
+    private final LongAdder lagCheckFailures = new LongAdder();
+
+    /**
+     * Constructor
+     * @param replica - entity manager factory of the read replica
+     * @param maxConcurrency - max number of replica entity managers open at the same time
+     * @param maxStaleness - max time (ms) a read of the replica may be behind the primary
+     * @param lagQuery - native query that returns the replica lag in ms, empty if the replica is never behind
+     * @param lagCheckInterval - time (ms) between two lag checks, 0 to check only by checkLag
+     */
+    public ReplicaRouter(EntityManagerFactory replica, int maxConcurrency, long maxStaleness, String lagQuery, long lagCheckInterval)
+    {
+        this.replica = replica;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxStaleness = maxStaleness;
+        this.lagQuery = lagQuery;
+        if(lagCheckInterval > 0)
+        {
+            ScheduledExecutorService lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-lag-checker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Measure the lag of the replica, the replica is treated as more and more behind while the check fails
+     */
+    public void checkLag()
+    {
+        long start = System.currentTimeMillis();
+        long lag = 0;
+        if(lagQuery != null && !lagQuery.isEmpty())
+        {
+            EntityManager em = open();
+            try
+            {
+                Object result = em.createNativeQuery(lagQuery).getSingleResult();
+                lag = result == null ? 0 : ((Number) result).longValue();
+            }
+            catch (RuntimeException e)
+            {
+                lagCheckFailures.increment();
+                e.printStackTrace();
+                return;
+            }
+            finally
+            {
+                close(em);
+            }
+        }
+        replicaTime = Math.max(replicaTime, start - Math.max(0, lag)); // the replica doesn't lose commits
+
+        // writes the replica already has don't change any routing
+        long caughtUp = replicaTime;
+        sessionWrites.values().removeIf(time -> time < caughtUp);
+        tableWrites.values().removeIf(time -> time < caughtUp);
+    }
+
+    /**
+     * Called after a write was committed to the primary
+     * @param session - the session that wrote, null if unknown
+     * @param tables - the written tables
+     */
+    public void written(Object session, Collection<String> tables)
+    {
+        long now = System.currentTimeMillis();
+        if(session != null) sessionWrites.put(session, now);
+        for(String table : tables) tableWrites.put(table, now);
+    }
+
+    /**
+     * @param session - the session that reads, null if unknown
+     * @param querySpaces - tables the read reads, null if unknown
+     * @return the database the read should use
+     */
+    public Route route(Object session, Collection<String> querySpaces)
+    {
+        long caughtUp = replicaTime;
+        if(querySpaces != null && caughtUpWith(querySpaces, caughtUp))
+        {
+            replicaReads.increment();
+            return Route.REPLICA;
+        }
+
+        Long sessionWrite = session == null ? null : sessionWrites.get(session);
+        if(sessionWrite != null && sessionWrite >= caughtUp)
+        {
+            ownWriteReads.increment();
+            primaryReads.increment();
+            return Route.PRIMARY;
+        }
+        if(System.currentTimeMillis() - caughtUp > maxStaleness)
+        {
+            primaryReads.increment();
+            return Route.PRIMARY;
+        }
+        staleReads.increment();
+        return Route.STALE_REPLICA;
+    }
+
+    private boolean caughtUpWith(Collection<String> querySpaces, long caughtUp)
+    {
+        if(caughtUp == 0) return false; // lag was never checked
+        for(String table : querySpaces)
+        {
+            Long written = tableWrites.get(table);
+            if(written != null && written >= caughtUp) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Create a read only entity manager of the replica, waits while maxConcurrency are already open
+     * @return a new entity manager, must be closed with close
+     */
+    public EntityManager open()
+    {
+        permits.acquireUninterruptibly();
+        try
+        {
+            EntityManager em = replica.createEntityManager();
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            return em;
+        }
+        catch (RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close an entity manager that was created by open and free its permit
+     */
+    public void close(EntityManager em)
+    {
+        try
+        {
+            em.close();
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return time (ms) the replica may be behind the primary - its lag at the last check and the time since,
+     * -1 if the lag was never checked
+     */
+    public long getLag()
+    {
+        long caughtUp = replicaTime;
+        return caughtUp == 0 ? -1 : System.currentTimeMillis() - caughtUp;
+    }
+
+    public long getPrimaryReads()
+    {
+        return primaryReads.sum();
+    }
+
+    public long getReplicaReads()
+    {
+        return replicaReads.sum();
+    }
+
+    public long getStaleReads()
+    {
+        return staleReads.sum();
+    }
+
+    public long getOwnWriteReads()
+    {
+        return ownWriteReads.sum();
+    }
+
+    /**
+     * @return a single line with all the counters
+     */
+    public String snapshot()
+    {
+        return String.format("replica lag=%dms primaryReads=%d replicaReads=%d staleReads=%d ownWriteReads=%d lagCheckFailures=%d",
+                getLag(), getPrimaryReads(), getReplicaReads(), getStaleReads(), getOwnWriteReads(), lagCheckFailures.sum());
+    }
+}
@@ -0,0 +1,76 @@
+package BL.Server.utils;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Description:     Hit ratios of the hibernate second level cache, in total and for every region
+ *                  (the entity regions, the collection regions and the query results region)
+ **/
+public class SecondLevelCacheMetrics
+{
+    private final Statistics statistics;
+
+    /**
+     * Constructor
+     * @param emf - entity manager factory, its statistics must be on (hibernate.generate_statistics)
+     */
+    public SecondLevelCacheMetrics(EntityManagerFactory emf)
+    {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * @param regionName - name of a cache region
+     * @return hits / (hits + misses) of the region, 0 if it was not used yet
+     */
+    public double getHitRatio(String regionName)
+    {
+        CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+        return region == null ? 0 : hitRatio(region.getHitCount(), region.getMissCount());
+    }
+
+    /**
+     * @return hits / (hits + misses) of all the entity and collection regions
+     */
+    public double getHitRatio()
+    {
+        return hitRatio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    /**
+     * @return hits / (hits + misses) of the cacheable queries
+     */
+    public double getQueryHitRatio()
+    {
+        return hitRatio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    }
+
+    /**
+     * @return a single line with the totals and the hits, misses and size (if the provider knows it) of every region
+     */
+    public String snapshot()
+    {
+        StringBuilder line = new StringBuilder(String.format("secondLevelCache hitRatio=%.2f queryHitRatio=%.2f",
+                getHitRatio(), getQueryHitRatio()));
+        for(String regionName : statistics.getSecondLevelCacheRegionNames())
+        {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if(region == null) continue;
+            line.append(String.format(" %s[hits=%d misses=%d hitRatio=%.2f", regionName, region.getHitCount(),
+                    region.getMissCount(), hitRatio(region.getHitCount(), region.getMissCount())));
+            long size = region.getElementCountInMemory();
+            if(size != CacheRegionStatistics.NO_EXTENDED_STAT_SUPPORT_RETURN) line.append(" size=").append(size);
+            line.append(']');
+        }
+        return line.toString();
+    }
+
+    private static double hitRatio(long hits, long misses)
+    {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,136 @@
+package BL.Server.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Description:     Coalesces identical queries that run at the same time (single flight)
+ *                  The first request of a key runs the query, requests with the same key that arrive while it runs
+ *                  wait for it and share its result instead of running the query again.
+ *                  A write to a table a running query reads detaches it - requests that arrive after the commit
+ *                  start a new query, so nobody gets a result older than a write it could see
+ **/
+public class SingleFlight
+{
+    private final Map<QueryCache.Key, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    /**
+     * Run the query, or wait for the same query if it is already running
+     * @param key - key of the query
+     * @param querySpaces - tables the query reads
+     * @param query - runs the query
+     * @return result of the query, shared by all the requests that waited for it
+     */
+    public Object execute(QueryCache.Key key, Set<String> querySpaces, Supplier<Object> query)
+    {
+        Flight flight = new Flight(querySpaces);
+        Flight running = flights.putIfAbsent(key, flight);
+        if(running != null)
+        {
+            deduplicated.increment();
+            return running.await();
+        }
+
+        executions.increment();
+        try
+        {
+            Object result = query.get();
+            flight.result.complete(result);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Stop sharing the running queries that read one of the tables
+     * @param tables - tables that were written
+     */
+    public void detach(Collection<String> tables)
+    {
+        flights.entrySet().removeIf(entry -> !Collections.disjoint(entry.getValue().querySpaces, tables));
+    }
+
+    public int getRunning()
+    {
+        return flights.size();
+    }
+
+    public long getExecutions()
+    {
+        return executions.sum();
+    }
+
+    public long getDeduplicated()
+    {
+        return deduplicated.sum();
+    }
+
+    /**
+     * @return a single line with all the counters
+     */
+    public String snapshot()
+    {
+        long executed = getExecutions();
+        long shared = getDeduplicated();
+        return String.format("singleFlight running=%d executions=%d deduplicated=%d dedupRatio=%.2f",
+                getRunning(), executed, shared, (double) shared / Math.max(1, executed + shared));
+    }
+
+    /**
+     * a running query and the tables it reads
+     */
+    private static class Flight
+    {
+        private final Set<String> querySpaces;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Flight(Set<String> querySpaces)
+        {
+            this.querySpaces = querySpaces;
+        }
+
+        Object await()
+        {
+            boolean interrupted = false;
+            try
+            {
+                while (true)
+                {
+                    try
+                    {
+                        return result.get();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            catch (ExecutionException e)
+            {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            }
+            finally
+            {
+                if(interrupted) Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package BL.Server.utils;
+
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Description:     Hibernate event listener that reports every table written by a session (see DB.tablesWritten)
+ *                  Listens to entity and collection writes, so cascaded writes are seen too.
+ *                  The tables written by a transaction are collected and reported once after it commits (a batch
+ *                  of rows is a single report), a rolled back transaction reports nothing
+ **/
+class TableWriteListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener, PostCollectionRemoveEventListener
+{
+    private final Consumer<Collection<String>> onCommit;
+    /* tables written by the running transaction of every session, a session is used by a single thread at a time */
+    private final Map<EventSource, Set<String>> writtenTables = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param onCommit - called with the tables written by a transaction after it commits
+     */
+    TableWriteListener(Consumer<Collection<String>> onCommit)
+    {
+        this.onCommit = onCommit;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event)
+    {
+        reportAfterCommit(event.getSession(), event.getPersister().getQuerySpaces());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event)
+    {
+        reportAfterCommit(event.getSession(), event.getPersister().getQuerySpaces());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event)
+    {
+        reportAfterCommit(event.getSession(), event.getPersister().getQuerySpaces());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event)
+    {
+        reportCollectionAfterCommit(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event)
+    {
+        reportCollectionAfterCommit(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event)
+    {
+        reportCollectionAfterCommit(event);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister)
+    {
+        return false;
+    }
+
+    /**
+     * still abstract in PostActionEventListener, hibernate calls requiresPostCommitHandling
+     */
+    @Deprecated
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister)
+    {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private void reportCollectionAfterCommit(AbstractCollectionEvent event)
+    {
+        String role = event.getCollection().getRole();
+        if(role == null) return;
+        reportAfterCommit(event.getSession(), event.getSession().getFactory().getMetamodel()
+                .collectionPersister(role).getCollectionSpaces());
+    }
+
+    /**
+     * add the tables to the ones written by the transaction of the session, the first write of the transaction
+     * registers the report
+     */
+    private void reportAfterCommit(EventSource session, Serializable[] querySpaces)
+    {
+        Set<String> tables = writtenTables.get(session);
+        if(tables == null)
+        {
+            tables = new HashSet<>();
+            writtenTables.put(session, tables);
+            session.getActionQueue().registerProcess((success, completedSession) -> {
+                Set<String> written = writtenTables.remove(session);
+                if(success && written != null) onCommit.accept(written);
+            });
+        }
+        for(Serializable querySpace : querySpaces) tables.add(querySpace.toString());
+    }
+}
@@ -0,0 +1,253 @@
+package BL.Server.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:     Bounded LRU index of the subscribers of the notification topics (a team, a page, a match, a
+ *                  league season), topics are named "kind:id" (see Notifiable.topic)
+ *                  Every username gets a small int id, the subscribers of a topic are kept as a bit set of those
+ *                  ids, so resolving several topics is a union of bit sets and the users are not loaded.
+ *                  The subscribers of a topic are read by the loader of its kind the first time the topic is used,
+ *                  a write to one of the tables of the kind (a follow, a roster change) drops its topics, they are
+ *                  read again on their next use. Subscribers read while a write of the kind committed are not kept
+ **/
+public class TopicIndex
+{
+    /**
+     * Description:     Reads the usernames of the subscribers of a topic of a single kind
+     **/
+    public interface SubscriberLoader
+    {
+        /**
+         * @param id - id of the topic (the part after the kind)
+         * @return the usernames of the subscribers, may repeat, null if they could not be read
+         */
+        List<String> load(String id);
+    }
+
+    private final int maxTopics;
+    private final Map<String, Kind> kinds = new HashMap<>();
+    private final LinkedHashMap<String, BitSet> topics;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> usernames = new ArrayList<>(); // username of every id
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructor
+     * @param maxTopics - max number of topics kept, the least recently used is dropped
+     */
+    public TopicIndex(int maxTopics)
+    {
+        this.maxTopics = maxTopics;
+        this.topics = new LinkedHashMap<String, BitSet>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest)
+            {
+                return size() > TopicIndex.this.maxTopics;
+            }
+        };
+    }
+
+    /**
+     * @param kind - kind of the topics
+     * @param tables - the tables the loader reads, a write to one of them drops the topics of the kind,
+     *               null - every write drops them
+     * @param loader - reads the subscribers of a topic of the kind
+     */
+    public synchronized void register(String kind, Collection<String> tables, SubscriberLoader loader)
+    {
+        kinds.put(kind, new Kind(tables, loader));
+    }
+
+    /**
+     * @param topics - names of the topics
+     * @return the usernames of the subscribers of at least one of the topics, every username once,
+     * null if the subscribers of one of the topics could not be read or its kind is unknown
+     */
+    public List<String> resolve(Collection<String> topics)
+    {
+        BitSet subscribers = new BitSet();
+        for(String topic : topics)
+        {
+            BitSet topicSubscribers = subscribers(topic);
+            if(topicSubscribers == null) return null;
+            subscribers.or(topicSubscribers);
+        }
+
+        List<String> result = new ArrayList<>(subscribers.cardinality());
+        synchronized (this)
+        {
+            for(int id = subscribers.nextSetBit(0); id >= 0; id = subscribers.nextSetBit(id + 1))
+            {
+                result.add(usernames.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the ids of the subscribers of the topic, the set is never changed - null if they could not be read
+     */
+    private BitSet subscribers(String topic)
+    {
+        int separator = topic.indexOf(':');
+        if(separator < 0) return null;
+        Kind kind;
+        long startEpoch;
+        synchronized (this)
+        {
+            BitSet subscribers = topics.get(topic);
+            if(subscribers != null)
+            {
+                hits.increment();
+                return subscribers;
+            }
+            kind = kinds.get(topic.substring(0, separator));
+            if(kind == null) return null;
+            startEpoch = epoch.get();
+        }
+
+        loads.increment();
+        List<String> loaded;
+        try
+        {
+            loaded = kind.loader.load(topic.substring(separator + 1));
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            loaded = null;
+        }
+        if(loaded == null)
+        {
+            loadFailures.increment();
+            return null;
+        }
+
+        synchronized (this)
+        {
+            BitSet subscribers = new BitSet();
+            for(String username : loaded) subscribers.set(idOf(username));
+            if(kind.lastInvalidated <= startEpoch) topics.put(topic, subscribers); // no write while it was read
+            return subscribers;
+        }
+    }
+
+    private int idOf(String username)
+    {
+        Integer id = ids.get(username);
+        if(id == null)
+        {
+            id = usernames.size();
+            ids.put(username, id);
+            usernames.add(username);
+        }
+        return id;
+    }
+
+    /**
+     * Drop the topics of every kind that reads one of the given tables
+     * @param tables - tables that were written
+     */
+    public synchronized void invalidate(Collection<String> tables)
+    {
+        long current = epoch.incrementAndGet();
+        Set<String> written = new HashSet<>(tables);
+        List<String> invalidKinds = new ArrayList<>();
+        for(Map.Entry<String, Kind> entry : kinds.entrySet())
+        {
+            Kind kind = entry.getValue();
+            if(kind.tables == null || !Collections.disjoint(kind.tables, written))
+            {
+                kind.lastInvalidated = current;
+                invalidKinds.add(entry.getKey() + ":");
+            }
+        }
+        if(invalidKinds.isEmpty()) return;
+
+        Iterator<String> iterator = topics.keySet().iterator();
+        while (iterator.hasNext())
+        {
+            String topic = iterator.next();
+            for(String prefix : invalidKinds)
+            {
+                if(topic.startsWith(prefix))
+                {
+                    iterator.remove();
+                    invalidations.increment();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of topics kept
+     */
+    public synchronized int size()
+    {
+        return topics.size();
+    }
+
+    /**
+     * @return number of usernames that got an id
+     */
+    public synchronized int getSubscriberIds()
+    {
+        return usernames.size();
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getLoads()
+    {
+        return loads.sum();
+    }
+
+    public long getInvalidations()
+    {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return a single line with all the counters
+     */
+    public String snapshot()
+    {
+        return String.format("topicIndex topics=%d subscriberIds=%d hits=%d loads=%d loadFailures=%d invalidations=%d",
+                size(), getSubscriberIds(), getHits(), getLoads(), loadFailures.sum(), getInvalidations());
+    }
+
+    private static class Kind
+    {
+        private final Set<String> tables;
+        private final SubscriberLoader loader;
+        private long lastInvalidated = -1; // epoch of the last write to one of the tables
+
+        private Kind(Collection<String> tables, SubscriberLoader loader)
+        {
+            this.tables = tables == null ? null : new HashSet<>(tables);
+            this.loader = loader;
+        }
+    }
+}
@@ -4,8 +4,6 @@ import DL.Administration.Financial.AssociationFinancialEntry;
 import DL.Administration.Financial.FinancialEntry;
 import DL.Administration.Financial.FinancialUser;
 import DL.Users.User;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -27,7 +25,6 @@ import java.util.List;
 public class AssociationMember extends User implements FinancialUser
 {
     @OneToMany(mappedBy = "source",cascade = CascadeType.MERGE)
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<AssociationFinancialEntry> myEntries;
 
     /**
@@ -1,5 +1,8 @@
 package DL.Game.LeagueSeason;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.Objects;
@@ -9,9 +12,13 @@ import java.util.Objects;
  **/
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NamedQueries(value = {
-        @NamedQuery(name = "GetLeague", query = "SELECT l From League l WHERE l.name =:name"),
-        @NamedQuery(name = "GetAllLeagues", query = "SELECT l From League l")
+        @NamedQuery(name = "GetLeague", query = "SELECT l From League l WHERE l.name =:name",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+        @NamedQuery(name = "GetAllLeagues", query = "SELECT l From League l",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
 })
 public class League implements Serializable {
 
@@ -5,8 +5,6 @@ import DL.Game.Policy.GamePolicy;
 import DL.Game.Policy.ScorePolicy;
 import DL.Game.Referee;
 import DL.Team.Team;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import javax.swing.table.TableColumn;
@@ -48,15 +46,12 @@ public class LeagueSeason implements Serializable {
     private ScorePolicy scorePolicy;
 
     @OneToMany(cascade = CascadeType.MERGE, mappedBy = "leagueSeason")
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Match> matches;
 
     @ManyToMany(mappedBy = "leagueSeasons")
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Team> teamsParticipate;
 
     @ManyToMany(mappedBy = "leagueSeasons")
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Referee> referees;
 
     @Column
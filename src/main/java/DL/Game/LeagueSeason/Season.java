@@ -1,5 +1,8 @@
 package DL.Game.LeagueSeason;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.Objects;
@@ -10,9 +13,13 @@ import java.util.Objects;
  **/
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NamedQueries(value = {
-        @NamedQuery(name = "GetSeason", query = "SELECT s From Season s WHERE s.year = :year"),
-        @NamedQuery(name = "GetAllSeasons", query = "SELECT s From Season s")
+        @NamedQuery(name = "GetSeason", query = "SELECT s From Season s WHERE s.year = :year",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+        @NamedQuery(name = "GetAllSeasons", query = "SELECT s From Season s",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
 })
 public class Season implements Serializable {
 
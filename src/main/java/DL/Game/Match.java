@@ -4,8 +4,6 @@ import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.MatchEvents.EventLog;
 import DL.Team.Assets.Stadium;
 import DL.Team.Team;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -50,7 +48,6 @@ public class Match implements Serializable {
     private Team awayTeam;
 
     @ManyToMany(cascade = CascadeType.MERGE)
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Referee> referees; // maximum 3 referees
 
     @ManyToOne
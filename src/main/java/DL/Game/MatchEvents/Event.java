@@ -10,8 +10,11 @@ import com.sun.javafx.beans.IDProperty;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -86,4 +89,30 @@ public abstract class Event implements Serializable, Notifiable {
 
         return result;
     }
+
+    /**
+     * the members and the page followers of both teams, the page ids are read without loading the followers
+     */
+    @Override
+    public Collection<String> getTopics()
+    {
+        if(eventLog == null || eventLog.getMyMatch() == null) return null;
+        List<String> topics = new ArrayList<>();
+        for(Team team : new Team[]{eventLog.getMyMatch().getHomeTeam(), eventLog.getMyMatch().getAwayTeam()})
+        {
+            topics.add(Notifiable.topic(TEAM_TOPIC, team.getName()));
+            if(team.getPage() != null) topics.add(Notifiable.topic(PAGE_TOPIC, team.getPage().getId()));
+        }
+        return topics;
+    }
+
+    /**
+     * the events of a match are delivered together as a digest of the match
+     */
+    @Override
+    public String getDigestTopic()
+    {
+        if(eventLog == null || eventLog.getMyMatch() == null) return null;
+        return eventLog.getMyMatch().getHomeTeam().getName() + " vs " + eventLog.getMyMatch().getAwayTeam().getName();
+    }
 }
@@ -1,8 +1,6 @@
 package DL.Game.MatchEvents;
 
 import DL.Game.Match;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -24,7 +22,6 @@ public class EventLog implements Serializable {
     private int id;
 
     @OneToMany(mappedBy = "eventLog" ,cascade = CascadeType.MERGE)
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Event> eventList;
 
     @OneToOne
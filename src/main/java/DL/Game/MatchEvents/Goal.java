@@ -29,6 +29,9 @@ public class Goal extends OnePlayerEvent {
     @Override
     public String getType() { return Type(); }
 
+    @Override
+    public boolean isUrgent() { return true; } // not delayed by the digest of the match
+
     @Override
     public String toString() {
         return "" + getPlayer() + " Scored A Goal";
@@ -4,6 +4,8 @@ package DL.Game.Policy;
 import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.Match;
 import DL.Team.Team;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -13,9 +15,13 @@ import java.util.*;
  * Description:     This class represents a Game Policy
  **/
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NamedQueries(value = {
-        @NamedQuery(name = "GetGamePolicies", query = "SELECT gp From GamePolicy gp"),
-        @NamedQuery(name = "getGamePolicy", query = "SELECT gp FROM GamePolicy gp WHERE gp.numberOfRounds =: numberOfRounds AND gp.gamesPerDay =: gamesPerDay "),
+        @NamedQuery(name = "GetGamePolicies", query = "SELECT gp From GamePolicy gp",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+        @NamedQuery(name = "getGamePolicy", query = "SELECT gp FROM GamePolicy gp WHERE gp.numberOfRounds =: numberOfRounds AND gp.gamesPerDay =: gamesPerDay ",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
 })
 @IdClass(GamePolicy.EntryPK.class)
 public class GamePolicy implements Serializable{
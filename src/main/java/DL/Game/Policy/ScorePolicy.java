@@ -3,6 +3,8 @@ package DL.Game.Policy;
 import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.Match;
 import DL.Team.Team;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -12,9 +14,13 @@ import java.util.*;
  * Description:     This class represents a Score Policy
  **/
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NamedQueries(value = {
-        @NamedQuery(name = "GetScorePolicies", query = "SELECT sp From ScorePolicy sp"),
-        @NamedQuery(name = "GetScorePolicy", query = "SELECT sp FROM ScorePolicy sp WHERE sp.winPoints =: winPoints AND sp.drawPoints =: drawPoints AND sp.losePoints=:losePoints")
+        @NamedQuery(name = "GetScorePolicies", query = "SELECT sp From ScorePolicy sp",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+        @NamedQuery(name = "GetScorePolicy", query = "SELECT sp FROM ScorePolicy sp WHERE sp.winPoints =: winPoints AND sp.drawPoints =: drawPoints AND sp.losePoints=:losePoints",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
 
 })
 @IdClass(ScorePolicy.EntryPK.class)
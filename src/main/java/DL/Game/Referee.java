@@ -3,8 +3,6 @@ package DL.Game;
 import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Users.Fan;
 import DL.Users.User;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -18,8 +16,31 @@ import java.util.Objects;
  **/
 
 @Entity
+/* role detection - only the referee itself */
+@NamedEntityGraph(name = "Referee.role")
+/* event entry - the matches of the referee with their event logs, and their teams' players and the users an event
+ * notifies (the members of the teams and the followers of their pages, see Event.getNotifyUsersList) */
+@NamedEntityGraph(name = "Referee.eventEntry",
+        attributeNodes = {@NamedAttributeNode(value = "matches", subgraph = "match"), @NamedAttributeNode("leagueSeasons")},
+        subgraphs = {
+                @NamedSubgraph(name = "match", attributeNodes = {
+                        @NamedAttributeNode(value = "homeTeam", subgraph = "team"),
+                        @NamedAttributeNode(value = "awayTeam", subgraph = "team"),
+                        @NamedAttributeNode(value = "myEventLog", subgraph = "eventLog"),
+                        @NamedAttributeNode("referees")}),
+                @NamedSubgraph(name = "team", attributeNodes = {
+                        @NamedAttributeNode("players"),
+                        @NamedAttributeNode("coaches"),
+                        @NamedAttributeNode("teamManagers"),
+                        @NamedAttributeNode("teamOwners"),
+                        @NamedAttributeNode(value = "page", subgraph = "page")}),
+                @NamedSubgraph(name = "page", attributeNodes = @NamedAttributeNode("followers")),
+                @NamedSubgraph(name = "eventLog", attributeNodes = @NamedAttributeNode("eventList"))
+        })
 @NamedQueries(value = {
         @NamedQuery(name = "AllReferees", query = "SELECT r From Referee r"),
+        @NamedQuery(name = "RefereeRows", query = "SELECT new DL.Projections.RefereeRow(r.id, r.name, f.username, r.active) FROM Referee r LEFT JOIN r.fan f"),
+        @NamedQuery(name = "RefereeById", query = "SELECT r FROM Referee r WHERE r.id = :id"),
         @NamedQuery(name = "UpdateRefereeLeagueSeasonList", query = "UPDATE Referee r SET r.leagueSeasons = :newLeagueSeasonList WHERE r.fan.username = : username"),
         @NamedQuery(name = "setRefereeActivity", query = "UPDATE Referee r SET r.active = :active WHERE r.fan = :fan"),
         @NamedQuery(name = "activeRefereeByUser", query = "select r from Referee r where r.fan = :user and r.active = true"),
@@ -44,11 +65,9 @@ public class Referee implements Serializable {
     private String qualification;
 
     @ManyToMany(mappedBy = "referees")
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Match> matches;
 
     @ManyToMany
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<LeagueSeason> leagueSeasons;
 
     public int getId() {
@@ -0,0 +1,72 @@
+package DL.Projections;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Description:     A row of the referee lists - the id, name and user name of a referee, not an entity
+ *                  Loaded by a constructor expression query (RefereeRows), nothing else of the referee is loaded or sent
+ **/
+public final class RefereeRow implements Serializable {
+
+    private final int id;
+    private final String name;
+    private final String username;
+    private final boolean active;
+
+    /**
+     * Ctor - used by the query
+     *
+     * @param id       of the referee
+     * @param name     of the referee
+     * @param username of the fan of the referee, null if the referee has no fan
+     * @param active   true if the referee is active
+     */
+    public RefereeRow(int id, String name, String username, boolean active) {
+        this.id = id;
+        this.name = name;
+        this.username = username;
+        this.active = active;
+    }
+
+    /**
+     * Default ctor - for the binary codec
+     */
+    private RefereeRow() {
+        this(0, null, null, false);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RefereeRow that = (RefereeRow) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + username + ")";
+    }
+}
@@ -0,0 +1,65 @@
+package DL.Projections;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Description:     A row of the team lists - the name and status of a team, not an entity
+ *                  Loaded by a constructor expression query (TeamRows), nothing else of the team is loaded or sent
+ **/
+public final class TeamRow implements Serializable {
+
+    private final String name;
+    private final boolean active;
+    private final boolean close;
+
+    /**
+     * Ctor - used by the query
+     *
+     * @param name   of the team
+     * @param active true if the team is active
+     * @param close  true if the team is closed
+     */
+    public TeamRow(String name, boolean active, boolean close) {
+        this.name = name;
+        this.active = active;
+        this.close = close;
+    }
+
+    /**
+     * Default ctor - for the binary codec
+     */
+    private TeamRow() {
+        this(null, false, false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isClose() {
+        return close;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TeamRow teamRow = (TeamRow) o;
+        return Objects.equals(name, teamRow.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,8 +1,8 @@
 package DL.Team.Assets;
 
 import DL.Team.Team;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -16,9 +16,13 @@ import java.util.Objects;
  **/
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NamedQueries(value = {
-        @NamedQuery(name = "stadium", query = "SELECT s FROM Stadium s"),
-        @NamedQuery(name = "stadiumByName", query = "SELECT s FROM Stadium s WHERE s.name = :name"),
+        @NamedQuery(name = "stadium", query = "SELECT s FROM Stadium s",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+        @NamedQuery(name = "stadiumByName", query = "SELECT s FROM Stadium s WHERE s.name = :name",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
         @NamedQuery(name = "stadiumsByCapacity", query = "SELECT s FROM Stadium s WHERE s.capacity = :capcity"),
         @NamedQuery(name = "stadiumsByTeam", query = "SELECT s FROM Stadium s WHERE :team IN (s.teams)"),
         @NamedQuery(name = "setStadiumDetails", query = "UPDATE Stadium s SET s.name = :newName, s.capacity = :newCapacity, s.teams = :teamsList WHERE s.name = :name"),
@@ -37,7 +41,7 @@ public class Stadium implements Serializable
     private boolean active;
 
     @ManyToMany(cascade = {CascadeType.MERGE})
-    @LazyCollection(LazyCollectionOption.FALSE)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Team> teams;
 
 
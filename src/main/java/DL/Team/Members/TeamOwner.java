@@ -4,8 +4,6 @@ import DL.Administration.Financial.FinancialEntry;
 import DL.Administration.Financial.FinancialUser;
 import DL.Team.Team;
 import DL.Users.Fan;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -19,6 +17,8 @@ import javax.persistence.*;
  **/
 
 @Entity
+/* role detection - only the team owner itself */
+@NamedEntityGraph(name = "TeamOwner.role")
 @NamedQueries(value = {
         @NamedQuery(name = "TeamOwnerByUser", query = "SELECT to FROM TeamOwner to WHERE to.active = true and to.teamUser.fan = :user"),
         @NamedQuery(name = "setActiveTeamOwner", query = "UPDATE TeamOwner to SET to.active = : active where to =: teamOwner"),
@@ -30,6 +30,9 @@ import javax.persistence.*;
         @NamedQuery(name = "TeamOwnerAddManageNominee", query = "UPDATE TeamOwner to SET to.ownerNominees = :manageNominee WHERE  to.teamUser = :teamUser AND to.team.close = false"),
         @NamedQuery(name = "setTeamToTeamOwner", query = "UPDATE TeamOwner to SET to.team = :team WHERE to.teamUser = :teamUser"),
         @NamedQuery(name = "deactivateTeamOwner", query = "UPDATE TeamOwner to SET to.active = :active WHERE to.teamUser = :teamUser AND to.team.close = false"),
+        @NamedQuery(name = "TeamOwnersUsernames", query = "SELECT to.teamUser.fan.username FROM TeamOwner to WHERE to.team.name = :team AND to.active = true"),
+        @NamedQuery(name = "MatchOwnersUsernames", query = "SELECT to.teamUser.fan.username FROM TeamOwner to, Match m WHERE m.matchID = :match AND to.active = true AND (to.team = m.homeTeam OR to.team = m.awayTeam)"),
+        @NamedQuery(name = "LeagueSeasonOwnersUsernames", query = "SELECT to.teamUser.fan.username FROM TeamOwner to JOIN to.team t JOIN t.leagueSeasons ls WHERE ls.leagueSeasonID = :leagueSeason AND to.active = true"),
 })
 public class TeamOwner implements FinancialUser, Serializable
 {
@@ -44,11 +47,9 @@ public class TeamOwner implements FinancialUser, Serializable
     private Team team;
 
     @OneToMany()
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamOwner> ownerNominees;
 
     @OneToMany(mappedBy = "teamOwner" ,cascade = {CascadeType.MERGE})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamManager> manageNominees;
 
     @Column
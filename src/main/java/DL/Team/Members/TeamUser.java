@@ -13,6 +13,8 @@ import java.io.Serializable;
  **/
 
 @Entity
+/* role detection - only the team user itself */
+@NamedEntityGraph(name = "TeamUser.role")
 @NamedQueries(value = {
         @NamedQuery(name = "TeamUser", query = "SELECT tu from TeamUser tu"),
         @NamedQuery(name = "TeamUserByName", query = "SELECT tu from TeamUser tu WHERE tu.name = :name"),
@@ -28,6 +30,9 @@ import java.io.Serializable;
         @NamedQuery(name = "teamUserByFan", query = "SELECT tu from TeamUser tu WHERE tu.fan = :fan and tu.active = true"),
         @NamedQuery(name = "deactivateTeamUser", query = "UPDATE TeamUser tu SET tu.active = false WHERE tu.fan = :fan"),
         @NamedQuery(name = "ActivateTeamUserByFan", query = "UPDATE TeamUser tu SET tu.active = true WHERE tu.fan = :fan"),
+        @NamedQuery(name = "TeamMembersUsernames", query = "SELECT tu.fan.username FROM TeamUser tu WHERE tu.team.name = :team AND tu.active = true"),
+        @NamedQuery(name = "MatchMembersUsernames", query = "SELECT tu.fan.username FROM TeamUser tu, Match m WHERE m.matchID = :match AND tu.active = true AND (tu.team = m.homeTeam OR tu.team = m.awayTeam)"),
+        @NamedQuery(name = "LeagueSeasonMembersUsernames", query = "SELECT tu.fan.username FROM TeamUser tu JOIN tu.team t JOIN t.leagueSeasons ls WHERE ls.leagueSeasonID = :leagueSeason AND tu.active = true"),
 })
 
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
@@ -4,8 +4,6 @@ import DL.Users.Fan;
 import DL.Users.User;
 import com.sun.javafx.beans.IDProperty;
 import org.hibernate.annotations.Cascade;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -31,7 +29,6 @@ public abstract class Page implements Serializable
     protected String content;
 
     @ManyToMany(mappedBy = "follow",cascade = {CascadeType.PERSIST ,CascadeType.MERGE})
-    @LazyCollection(LazyCollectionOption.FALSE)
     Set<Fan> followers;
 
     public Page()
@@ -63,5 +60,10 @@ public abstract class Page implements Serializable
         return followers;
     }
 
+    public int getId()
+    {
+        return id;
+    }
+
 
 }
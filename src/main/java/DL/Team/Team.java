@@ -8,8 +8,6 @@ import DL.Team.Members.*;
 import DL.Team.Page.Page;
 import DL.Team.Page.TeamPage;
 import DL.Users.User;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import java.io.Serializable;
 import java.util.*;
@@ -32,6 +30,7 @@ import javax.persistence.*;
 @Entity
 @NamedQueries(value = {
         @NamedQuery(name = "Team", query = "SELECT t FROM Team t"),
+        @NamedQuery(name = "TeamRows", query = "SELECT new DL.Projections.TeamRow(t.name, t.active, t.close) FROM Team t"),
         @NamedQuery(name = "teamByName", query = "SELECT t FROM Team t WHERE t.name = :name"),
         @NamedQuery(name = "activeTeam", query = "SELECT t FROM Team t WHERE t.active = true AND t.close = false"),
         @NamedQuery(name = "inActiveTeam", query = "SELECT t FROM Team t WHERE t.active = false "),
@@ -64,39 +63,30 @@ public class Team implements Serializable {
     private TeamPage page;
 
     @OneToMany(mappedBy = "team", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamUser> coaches;
 
     @OneToMany(mappedBy = "team", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamUser> players;
 
     @OneToMany(mappedBy = "team", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamUser> teamManagers;
 
     @OneToMany(mappedBy = "team", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamOwner> teamOwners;
 
     @ManyToMany(mappedBy = "teams", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Stadium> stadiums;
 
     @OneToMany(mappedBy = "homeTeam", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Match> homeMatches;
 
     @OneToMany(mappedBy = "awayTeam", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Match> awayMatches;
 
     @OneToMany(mappedBy = "team", cascade = {CascadeType.ALL})
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<TeamFinancialEntry> teamFinancialEntries;
 
     @ManyToMany(cascade = CascadeType.MERGE)
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<LeagueSeason> leagueSeasons;
 
     //Constructor
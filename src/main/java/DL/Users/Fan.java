@@ -1,8 +1,6 @@
 package DL.Users;
 
 import DL.Team.Page.Page;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -13,7 +11,10 @@ import java.util.*;
  * ID:              7
  **/
 @NamedQueries( value = {
-        @NamedQuery(name = "AllFans", query = "SELECT f From Fan f")
+        @NamedQuery(name = "AllFans", query = "SELECT f From Fan f"),
+        @NamedQuery(name = "PageFollowersUsernames", query = "SELECT f.username FROM Fan f JOIN f.follow p WHERE p.id = :page"),
+        @NamedQuery(name = "MatchFollowersUsernames", query = "SELECT f.username FROM Fan f JOIN f.follow p, Match m WHERE m.matchID = :match AND (p = m.homeTeam.page OR p = m.awayTeam.page)"),
+        @NamedQuery(name = "LeagueSeasonFollowersUsernames", query = "SELECT f.username FROM Fan f JOIN f.follow p, Team t JOIN t.leagueSeasons ls WHERE ls.leagueSeasonID = :leagueSeason AND p = t.page")
 })
 @Entity
 @DiscriminatorValue(value = "Fan")
@@ -21,7 +22,6 @@ public class Fan extends User implements Serializable
 {
 
     @ManyToMany(cascade = CascadeType.ALL)
-    @LazyCollection(LazyCollectionOption.FALSE)
     private Set<Page> follow;
 
     public Fan (String userName, String email, String hashedPassword)
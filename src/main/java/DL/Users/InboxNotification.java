@@ -0,0 +1,100 @@
+package DL.Users;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Description:     A notification in the inbox of a single user - a (notification, username, read) row
+ *                  The rows of a notification are inserted in JDBC batches when it is sent (see
+ *                  NotificationUnit) and marked read by bulk updates, the users themselves are never written
+ * ID:              X
+ **/
+@Entity
+@Table(name = "user_inbox")
+@IdClass(InboxNotification.Key.class)
+@NamedQueries( value = {
+        @NamedQuery(name = "InboxByUser", query = "SELECT i FROM InboxNotification i JOIN FETCH i.notification WHERE i.username = :username ORDER BY i.notificationId DESC"),
+        @NamedQuery(name = "MarkInboxRead", query = "UPDATE InboxNotification i SET i.read = true WHERE i.notificationId = :notification AND i.username IN :usernames"),
+        @NamedQuery(name = "MarkAllInboxRead", query = "UPDATE InboxNotification i SET i.read = true WHERE i.username = :username AND i.read = false")
+})
+public class InboxNotification implements Serializable
+{
+    @Id
+    @Column(name = "notification_id")
+    private Long notificationId;
+    @Id
+    @Column(name = "username")
+    private String username;
+    @Column(name = "is_read")
+    private boolean read;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "notification_id", insertable = false, updatable = false)
+    private Notification notification;
+
+    /**
+     * Constructor - a new unread notification of the user
+     * @param notification - saved notification
+     * @param username - the user
+     */
+    public InboxNotification(Notification notification, String username)
+    {
+        this.notificationId = notification.getId();
+        this.username = username;
+        this.notification = notification;
+        this.read = false;
+    }
+
+    public InboxNotification()
+    {
+    }
+
+    public Notification getNotification()
+    {
+        return this.notification;
+    }
+
+    public String getUsername()
+    {
+        return this.username;
+    }
+
+    public boolean isRead()
+    {
+        return this.read;
+    }
+
+    /**
+     * Description:     Primary key of an inbox row
+     **/
+    public static class Key implements Serializable
+    {
+        private Long notificationId;
+        private String username;
+
+        public Key()
+        {
+        }
+
+        public Key(Long notificationId, String username)
+        {
+            this.notificationId = notificationId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if(this == other) return true;
+            if(!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return Objects.equals(notificationId, key.notificationId) && Objects.equals(username, key.username);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(notificationId, username);
+        }
+    }
+}
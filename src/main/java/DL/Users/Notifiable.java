@@ -1,11 +1,26 @@
 package DL.Users;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
 public interface Notifiable extends Serializable
 {
+    /* kinds of the notification topics, the subscribers of a topic are resolved by the server (see TopicIndex) */
+    String TEAM_TOPIC = "team";                   // the active members of a team, by its name
+    String PAGE_TOPIC = "page";                   // the followers of a page, by its id
+    String MATCH_TOPIC = "match";                 // the members and followers of both teams of a match, by its id
+    String LEAGUE_SEASON_TOPIC = "leagueSeason";  // the members and followers of the teams of a league season, by its id
+
+    /**
+     *
+     * @return name of the topic of the given kind and id
+     */
+    static String topic(String kind, Object id)
+    {
+        return kind + ":" + id;
+    }
     /**
      *
      * @return notification object with the message
@@ -18,4 +33,33 @@ public interface Notifiable extends Serializable
      */
     Set getNotifyUsersList();
 
+    /**
+     *
+     * @return topics whose subscribers get the notification, the server resolves them instead of
+     * getNotifyUsersList - null if the users are given only by getNotifyUsersList
+     */
+    default Collection<String> getTopics()
+    {
+        return null;
+    }
+
+    /**
+     *
+     * @return topic of the notification (e.g. a match) - notifications of the same topic may be delivered
+     * together as a single digest, null if the notification is always delivered alone
+     */
+    default String getDigestTopic()
+    {
+        return null;
+    }
+
+    /**
+     *
+     * @return true if the notification is delivered right away even if it has a digest topic
+     */
+    default boolean isUrgent()
+    {
+        return false;
+    }
+
 }
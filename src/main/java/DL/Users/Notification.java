@@ -37,6 +37,11 @@ public class Notification implements Serializable
         this.msg = "";
     }
 
+    public Long getId()
+    {
+        return this.id;
+    }
+
     public String getMsg()
     {
         return this.msg;
@@ -53,9 +58,21 @@ public class Notification implements Serializable
         return this.creationDate;
     }
 
-//    @Override
-//    public boolean equals(Object other)
-//    {
-//        return this.msg == ((Notification)other).msg;
-//    }
+    /**
+     * the same saved notification may be pushed to the client and read again from the inbox of the user,
+     * notifications that were not saved yet are compared by identity
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if(this == other) return true;
+        if(!(other instanceof Notification) || this.id == null) return false;
+        return this.id.equals(((Notification) other).id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.id == null ? System.identityHashCode(this) : this.id.hashCode();
+    }
 }
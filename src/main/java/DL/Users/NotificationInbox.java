@@ -0,0 +1,237 @@
+package DL.Users;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Description:     The notifications of a user, read page by page from the inbox rows (see InboxNotification)
+ *                  Only the loaded notifications are kept (and sent with the user), the map view (asMap) reads
+ *                  the next page of the inbox when it is iterated past the loaded ones. Without a page loader
+ *                  the view holds only the loaded notifications.
+ *                  Notifications added and marked read here are not saved, the server saves the inbox rows
+ * ID:              X
+ **/
+public class NotificationInbox implements Serializable
+{
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Description:     Reads a page of the inbox rows of the user, newest first
+     **/
+    public interface PageLoader
+    {
+        /**
+         * @return the rows of the page, null if they could not be read
+         */
+        List<InboxNotification> load(int firstResult, int maxResults);
+
+        /**
+         * @param results - results of an inbox query (InboxByUser), null if it failed
+         * @return the inbox rows of the results, null if the query failed
+         */
+        static List<InboxNotification> rows(List<?> results)
+        {
+            if(results == null) return null;
+            List<InboxNotification> rows = new ArrayList<>(results.size());
+            for(Object row : results) rows.add((InboxNotification) row);
+            return rows;
+        }
+    }
+
+    private Map<Notification, Boolean> loaded = new LinkedHashMap<>();
+    private int fetched; // number of inbox rows already read
+    private boolean complete;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private transient PageLoader pageLoader;
+    private transient Map<Notification, Boolean> view;
+
+    public NotificationInbox()
+    {
+    }
+
+    /**
+     * @param pageLoader - reads the pages of the inbox, null to use only the loaded notifications
+     */
+    public synchronized void setPageLoader(PageLoader pageLoader)
+    {
+        this.pageLoader = pageLoader;
+    }
+
+    public synchronized void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Read the next page of the inbox
+     * @return the notifications of the page that were not loaded before, null if there are no more pages or the
+     * page could not be read
+     */
+    public synchronized List<Map.Entry<Notification, Boolean>> loadPage()
+    {
+        if(complete || pageLoader == null) return null;
+        List<InboxNotification> rows = pageLoader.load(fetched, pageSize);
+        if(rows == null) return null;
+
+        fetched += rows.size();
+        complete = rows.size() < pageSize;
+        int before = loaded.size();
+        for(InboxNotification row : rows) loaded.putIfAbsent(row.getNotification(), row.isRead());
+
+        List<Map.Entry<Notification, Boolean>> entries = new ArrayList<>(loaded.entrySet());
+        List<Map.Entry<Notification, Boolean>> page = entries.subList(before, entries.size());
+        return page.isEmpty() && complete ? null : page;
+    }
+
+    /**
+     * @return true if every page of the inbox was read
+     */
+    public synchronized boolean isComplete()
+    {
+        return complete || pageLoader == null;
+    }
+
+    /**
+     * add a new notification, not read yet
+     * @return false if the notification was already loaded
+     */
+    public synchronized boolean add(Notification notification)
+    {
+        if(loaded.containsKey(notification)) return false;
+        loaded.put(notification, false);
+        return true;
+    }
+
+    public synchronized void markAsRead(Notification notification)
+    {
+        loaded.put(notification, true);
+    }
+
+    /**
+     * mark the loaded notifications as read
+     */
+    public synchronized void markAllAsRead()
+    {
+        loaded.replaceAll((notification, read) -> true);
+    }
+
+    /**
+     * replace the inbox by the given notifications, no more pages are read
+     */
+    public synchronized void setAll(Map<Notification, Boolean> notifications)
+    {
+        loaded = new LinkedHashMap<>(notifications);
+        complete = true;
+    }
+
+    private synchronized List<Map.Entry<Notification, Boolean>> loadedEntries()
+    {
+        return new ArrayList<>(loaded.entrySet());
+    }
+
+    private void loadAll()
+    {
+        while (loadPage() != null) ;
+    }
+
+    /**
+     * @return a map view of the notifications and their read flag, pages are read while it is iterated, size and
+     * lookups of notifications that were not loaded read all the pages
+     */
+    public synchronized Map<Notification, Boolean> asMap()
+    {
+        if(view == null) view = new InboxView();
+        return view;
+    }
+
+    private class InboxView extends AbstractMap<Notification, Boolean>
+    {
+        @Override
+        public Set<Entry<Notification, Boolean>> entrySet()
+        {
+            return new AbstractSet<Entry<Notification, Boolean>>()
+            {
+                @Override
+                public Iterator<Entry<Notification, Boolean>> iterator()
+                {
+                    return new PagingIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    loadAll();
+                    synchronized (NotificationInbox.this)
+                    {
+                        return loaded.size();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public Boolean get(Object key)
+        {
+            synchronized (NotificationInbox.this)
+            {
+                Boolean read = loaded.get(key);
+                if(read != null || isComplete()) return read;
+            }
+            loadAll();
+            synchronized (NotificationInbox.this)
+            {
+                return loaded.get(key);
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Override
+        public Boolean put(Notification notification, Boolean read)
+        {
+            synchronized (NotificationInbox.this)
+            {
+                return loaded.put(notification, read);
+            }
+        }
+    }
+
+    /**
+     * iterates the loaded notifications, then reads the next pages one by one
+     */
+    private class PagingIterator implements Iterator<Map.Entry<Notification, Boolean>>
+    {
+        private Iterator<Map.Entry<Notification, Boolean>> current = loadedEntries().iterator();
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!current.hasNext())
+            {
+                List<Map.Entry<Notification, Boolean>> page = loadPage();
+                if(page == null) return false;
+                current = page.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<Notification, Boolean> next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+    }
+}
@@ -3,8 +3,6 @@ package DL.Users;
 import BL.Server.utils.StringListConverter;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.Cascade;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 import org.hibernate.annotations.ManyToAny;
 
 import javax.persistence.*;
@@ -49,15 +47,12 @@ public abstract class User implements Serializable {
 
     @OneToOne(cascade = CascadeType.ALL)
     private UserPermission userPermission;
-    @ElementCollection
-    @CollectionTable(name = "user_notification")
-    @MapKeyColumn(name = "user_type_col")
-    @Column(name = "boolean_col")
-    @LazyCollection(LazyCollectionOption.FALSE)
-    private Map<Notification, Boolean> notificationsOwner; //maps from notification to a boolean of read or not read
+    @Transient
+    private NotificationInbox inbox; //the notifications of the user and their read flag, saved as InboxNotification rows
+    @Transient
+    private String pushToken; //issued at login, the client opens the push channel of the user with it (see PushServer)
 
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL)
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<UserComplaint> userComplaintsOwner;
 
     /**
@@ -75,7 +70,7 @@ public abstract class User implements Serializable {
         this.email = email;
         this.hashedPassword = hashedPassword;
         this.userPermission = new UserPermission(permissionList);
-        this.notificationsOwner = new HashMap<Notification, Boolean>();
+        this.inbox = new NotificationInbox();
         this.userComplaintsOwner = new ArrayList<UserComplaint>();
     }
 
@@ -167,35 +162,40 @@ public abstract class User implements Serializable {
      * @return true if
      */
     public boolean addNotification(Notification notification) {
-        if (notificationsOwner.containsKey(notification)) {
-            // the user already has this notification
-            return false;
-        }
-
-        this.notificationsOwner.put(notification, false);
-        return true;
+        // false if the user already has this notification
+        return inbox.add(notification);
     }
 
     public boolean markAllNotificationsAsRead() {
-        Iterator it = this.notificationsOwner.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry pair = (Map.Entry) it.next();
-            Notification notification = (Notification) pair.getKey();
-            markNotificationAsRead(notification);
-        }
+        inbox.markAllAsRead();
         return true;
     }
 
     public boolean markNotificationAsRead(Notification notification) {
-        this.notificationsOwner.put(notification, true);
+        inbox.markAsRead(notification);
         return true;
     }
 
+    /**
+     * @return the notifications of the user mapped to their read flag, a view that reads the inbox page by page
+     */
     public Map<Notification, Boolean> getNotifications() {
-        return notificationsOwner;
+        return inbox.asMap();
     }
 
     public void setNotifications(Map<Notification, Boolean> notificationsOwner) {
-        this.notificationsOwner = notificationsOwner;
+        inbox.setAll(notificationsOwner);
+    }
+
+    public NotificationInbox getInbox() {
+        return inbox;
+    }
+
+    public String getPushToken() {
+        return pushToken;
+    }
+
+    public void setPushToken(String pushToken) {
+        this.pushToken = pushToken;
     }
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package DL.Users;
 
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -30,7 +28,6 @@ public class UserPermission implements Serializable
     private Long id;
 
     @ElementCollection
-    @LazyCollection(LazyCollectionOption.FALSE)
     private List<Permission> teamPermissions;
 
 
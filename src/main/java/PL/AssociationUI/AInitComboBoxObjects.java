@@ -5,8 +5,8 @@ import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.LeagueSeason.Season;
 import DL.Game.Policy.GamePolicy;
 import DL.Game.Policy.ScorePolicy;
-import DL.Game.Referee;
-import DL.Team.Team;
+import DL.Projections.RefereeRow;
+import DL.Projections.TeamRow;
 import PL.main.App;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -161,9 +161,9 @@ public abstract class AInitComboBoxObjects {
         return false;
     }
 
-    public boolean initRefereesChoices(ComboBox<Referee> referees) {
+    public boolean initRefereesChoices(ComboBox<RefereeRow> referees) {
         try {
-            ObservableList<Referee> refereesList = FXCollections.observableArrayList();
+            ObservableList<RefereeRow> refereesList = FXCollections.observableArrayList();
             referees.setItems(refereesList);
             /**TODO:example - should remove*/
 //            List<Referee> addRefereesList = new ArrayList<>();
@@ -172,7 +172,7 @@ public abstract class AInitComboBoxObjects {
 //            addRefereesList.add(new Referee("main", "check2", null, true));
 
             /**TODO: REMOVE THE COMMENT WHEN COMMUNICATION IS WORKING*/
-            List<Referee> addRefereesList = App.clientSystem.leagueSeasonUnit.getReferees();
+            List<RefereeRow> addRefereesList = App.clientSystem.leagueSeasonUnit.getRefereeRows();
             if (addRefereesList == null)
                 showSimpleAlert("Error", "There was a problem with the server. please try again");
             else if (addRefereesList.size() == 0)
@@ -189,9 +189,9 @@ public abstract class AInitComboBoxObjects {
         return false;
     }
 
-    public boolean initTeamChoices(ComboBox<Team> teams) {
+    public boolean initTeamChoices(ComboBox<TeamRow> teams) {
         try {
-            ObservableList<Team> teamList = FXCollections.observableArrayList();
+            ObservableList<TeamRow> teamList = FXCollections.observableArrayList();
             teams.setItems(teamList);
             /**TODO:example - should remove*/
 //            List<Team> addTeamList = new ArrayList<>();
@@ -201,7 +201,7 @@ public abstract class AInitComboBoxObjects {
 
 
             /**TODO: REMOVE THE COMMENT WHEN COMMUNICATION IS WORKING*/
-            List<Team> addTeamList = App.clientSystem.leagueSeasonUnit.getTeams();
+            List<TeamRow> addTeamList = App.clientSystem.leagueSeasonUnit.getTeamRows();
             if (addTeamList == null)
                 showSimpleAlert("Error", "There was a problem with the server. please try again");
             else if (addTeamList.size() == 0)
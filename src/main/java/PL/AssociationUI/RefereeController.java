@@ -4,6 +4,7 @@ import BL.Client.ClientSystem;
 import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.LeagueSeason.Season;
 import DL.Game.Referee;
+import DL.Projections.RefereeRow;
 import PL.main.App;
 import com.jfoenix.controls.JFXComboBox;
 import javafx.fxml.FXML;
@@ -35,7 +36,7 @@ public class RefereeController extends AInitComboBoxObjects {
     private JFXComboBox<LeagueSeason> leagueSeasons;
 
     @FXML
-    private JFXComboBox<Referee> referees;
+    private JFXComboBox<RefereeRow> referees;
 
         @FXML
     public ComboBox<String> comboboxReferee;
@@ -73,10 +74,10 @@ public class RefereeController extends AInitComboBoxObjects {
 
         referees_username_FX = FXCollections.observableArrayList();
         comboboxReferee.setItems(referees_username_FX);
-        List<Referee> referees = ClientSystem.communication.query("AllReferees", new HashMap<>());
+        List<RefereeRow> referees = ClientSystem.communication.query("RefereeRows", new HashMap<>());
         List<String> referees_username = new ArrayList<>();
-        for (Referee referee : referees)
-            referees_username.add(referee.getFan().getUsername());
+        for (RefereeRow referee : referees)
+            referees_username.add(referee.getUsername());
         referees_username_FX.addAll(referees_username);
 
     }
@@ -92,7 +93,7 @@ public class RefereeController extends AInitComboBoxObjects {
 
             //get fields values
             leagueSeason = leagueSeasons.getValue();
-            referee = referees.getValue();
+            referee = App.clientSystem.leagueSeasonUnit.getReferee(referees.getValue());
 
             if (App.clientSystem.leagueSeasonUnit.setRefereeInLeagueSeason(leagueSeason, referee)) {
                 showSimpleAlert("Success", "Referee added successfully to the required LeagueSeason!");
@@ -5,6 +5,7 @@ import BL.Client.Handlers.AssociationManagementUnit;
 import BL.Communication.ClientServerCommunication;
 import DL.Game.LeagueSeason.LeagueSeason;
 import DL.Game.LeagueSeason.Season;
+import DL.Projections.TeamRow;
 import DL.Team.Team;
 import DL.Users.Fan;
 import DL.Users.User;
@@ -40,7 +41,7 @@ public class TeamController extends AInitComboBoxObjects{
     private JFXComboBox<LeagueSeason> leagueSeasons;
 
     @FXML
-    private JFXComboBox<Team> teams;
+    private JFXComboBox<TeamRow> teams;
 
     public void initTeamInLeagueSeasonsComboBoxOptions(){
         if (!initSeasonChoices(seasons) || !initTeamChoices(teams)){
@@ -90,7 +91,9 @@ public class TeamController extends AInitComboBoxObjects{
 
             //get fields values
             leagueSeason = leagueSeasons.getValue();
-            team = teams.getValue();
+            team = App.clientSystem.associationManagementUnit.loadTeam(teams.getValue().getName());
+            if (team == null)
+                throw new Exception("There was a problem with the server. Please try again later");
 
             if (App.clientSystem.leagueSeasonUnit.addTeamToLeagueSeason(leagueSeason,team)){
                 showSimpleAlert("Success", "Team added to the league successfully!");
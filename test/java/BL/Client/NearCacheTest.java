@@ -0,0 +1,82 @@
+package BL.Client;
+
+import BL.Server.utils.QueryCache;
+import DL.Team.Team;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the client near cache - copies of the results, entity keys and pushed invalidations
+ **/
+public class NearCacheTest {
+
+    private final Set<String> teamTables = new HashSet<>(Arrays.asList("Team"));
+
+    private QueryCache.Key teamKey(NearCache cache, String name) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("name", name);
+        return cache.key("TeamByName", parameters);
+    }
+
+    /**
+     * A handler that changes a result should not change the cached copy
+     */
+    @Test
+    public void copyOnHitTest() {
+        NearCache cache = new NearCache(10, 60000);
+        cache.put(teamKey(cache, "A"), teamTables, cache.epoch(), new ArrayList<>(Arrays.asList("team A")));
+
+        List hit = cache.get(teamKey(cache, "A"));
+        assertEquals(Collections.singletonList("team A"), hit);
+        hit.clear();
+        assertEquals(Collections.singletonList("team A"), cache.get(teamKey(cache, "A")));
+    }
+
+    /**
+     * Entities with the same id should give the same key
+     */
+    @Test
+    public void entityKeyTest() {
+        NearCache cache = new NearCache(10, 60000);
+        HashMap<String, Object> first = new HashMap<>();
+        first.put("team", new Team("Hapoel", true, false));
+        HashMap<String, Object> second = new HashMap<>();
+        second.put("team", new Team("Hapoel", false, true));
+        HashMap<String, Object> other = new HashMap<>();
+        other.put("team", new Team("Maccabi", true, false));
+
+        assertEquals(cache.key("PlayersOfTeam", first), cache.key("PlayersOfTeam", second));
+        assertNotEquals(cache.key("PlayersOfTeam", first), cache.key("PlayersOfTeam", other));
+        HashMap<String, Object> notComparable = new HashMap<>();
+        notComparable.put("value", new Object());
+        assertNull(cache.key("PlayersOfTeam", notComparable));
+    }
+
+    /**
+     * A pushed write to a table drops the results that read it, a result of a query that overlapped the
+     * invalidation is not cached
+     */
+    @Test
+    public void invalidationTest() {
+        NearCache cache = new NearCache(10, 60000);
+        cache.put(teamKey(cache, "A"), teamTables, cache.epoch(), new ArrayList<>(Arrays.asList("team A")));
+        cache.invalidate(Collections.singleton("League"));
+        assertNotNull(cache.get(teamKey(cache, "A")));
+        cache.invalidate(Collections.singleton("Team"));
+        assertNull(cache.get(teamKey(cache, "A")));
+
+        long epoch = cache.epoch();
+        cache.invalidateAll();
+        cache.put(teamKey(cache, "B"), teamTables, epoch, new ArrayList<>(Arrays.asList("team B")));
+        assertNull(cache.get(teamKey(cache, "B")));
+    }
+}
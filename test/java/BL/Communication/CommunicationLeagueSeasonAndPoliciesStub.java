@@ -223,6 +223,8 @@ public class CommunicationLeagueSeasonAndPoliciesStub extends ClientServerCommun
                 leagueSeasons.add((LeagueSeason) toInsert);
                 return true;
             }
+        } else if (toInsert instanceof List) { // scheduled matches
+            return true;
         }
         return false;
     }
@@ -278,11 +280,6 @@ public class CommunicationLeagueSeasonAndPoliciesStub extends ClientServerCommun
         return true;
     }
 
-    @Override
-    public boolean startNotificationListener() {
-        return true;
-    }
-
     /**
      * checks if two objects are the same and returns their index
      *
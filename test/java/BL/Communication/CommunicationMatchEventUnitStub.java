@@ -78,6 +78,13 @@ public class CommunicationMatchEventUnitStub extends ClientServerCommunication
         return null;
     }
 
+    @Override
+    public List<?> query(String queryName, Map<String, Object> parameters, String fetchGraph)
+    {
+        // the stub holds the entities in memory - every graph is loaded
+        return query(queryName, parameters);
+    }
+
     @Override
     public boolean update(String queryName, Map<String, Object> parameters)
     {
@@ -60,15 +60,6 @@ public class CommunicationNullStub extends ClientServerCommunication {
         return false;
     }
 
-    @Override
-    public boolean startNotificationListener() {
-        return true;
-    }
-
-    @Override
-    public void notificationDemon() {
-    }
-
     @Override
     public void stopListener() {
     }
@@ -0,0 +1,175 @@
+package BL.Communication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the client connection pool against an echo server
+ **/
+public class ConnectionPoolTest {
+
+    private Server server;
+    private ConnectionPool pool;
+    private AtomicInteger connections;
+    private final AtomicLong cursorIds = new AtomicLong();
+    private volatile boolean closeAfterAnswer;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        connections = new AtomicInteger();
+        server = new Server(port, 4, 100, this::echo);
+        server.start();
+        Thread.sleep(300);
+        pool = new ConnectionPool(InetAddress.getLoopbackAddress(), port, 2, 64, 1000, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        server.stop();
+    }
+
+    /**
+     * answers every request with its query name until the client closes the connection,
+     * "silent" is never answered and "fail" is answered with an error,
+     * a stream opens a cursor of the connection and a fetch is answered only on the connection of its cursor
+     */
+    private void echo(Socket socket) {
+        connections.incrementAndGet();
+        Set<Long> cursors = new HashSet<>();
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (true) {
+                SystemRequest request = (SystemRequest) FrameCodec.readFrame(in);
+                if ("silent".equals(request.queryName)) continue;
+                SystemResponse response;
+                if (request.type == SystemRequest.Type.Stream) {
+                    long cursorId = cursorIds.incrementAndGet();
+                    cursors.add(cursorId);
+                    response = new SystemResponse(request.requestId, cursorId);
+                } else if (request.type == SystemRequest.Type.Fetch) {
+                    response = cursors.contains(request.data)
+                            ? new SystemResponse(request.requestId, request.data)
+                            : new SystemResponse(request.requestId, null, "cursor " + request.data + " is not open");
+                } else {
+                    response = "fail".equals(request.queryName)
+                            ? new SystemResponse(request.requestId, null, "no such query")
+                            : new SystemResponse(request.requestId, request.queryName);
+                }
+                FrameCodec.writeFrame(out, response, FrameCodec.getDefaultCodec());
+                out.flush();
+                if (closeAfterAnswer) return;
+            }
+        } catch (EOFException ignored) {
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sequential requests should reuse the same connection
+     */
+    @Test
+    public void reuseConnectionTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("q" + i, pool.send(new SystemRequest(SystemRequest.Type.Query, "q" + i, null)));
+        }
+        assertEquals(1, connections.get());
+    }
+
+    /**
+     * A connection closed by the server should be replaced transparently
+     */
+    @Test
+    public void reconnectTest() throws Exception {
+        closeAfterAnswer = true;
+        assertEquals("a", pool.send(new SystemRequest(SystemRequest.Type.Query, "a", null)));
+        Thread.sleep(100);
+        closeAfterAnswer = false;
+        assertEquals("b", pool.send(new SystemRequest(SystemRequest.Type.Query, "b", null)));
+        assertEquals(2, connections.get());
+    }
+
+    /**
+     * A request the caller stopped waiting for should release its slot
+     */
+    @Test
+    public void timedOutRequestTest() throws Exception {
+        ConnectionPool singleSlot = new ConnectionPool(InetAddress.getLoopbackAddress(), port, 1, 1, 1000, 60000);
+        try {
+            CompletableFuture<Object> silent = singleSlot.sendAsync(new SystemRequest(SystemRequest.Type.Query, "silent", null));
+            silent.completeExceptionally(new TimeoutException());
+            CompletableFuture<Object> next = singleSlot.sendAsync(new SystemRequest(SystemRequest.Type.Query, "next", null));
+            assertEquals("next", next.get(2, TimeUnit.SECONDS));
+        } finally {
+            singleSlot.close();
+        }
+    }
+
+    /**
+     * A request that failed on the server should fail on the client, the connection stays usable
+     */
+    @Test
+    public void errorResponseTest() throws Exception {
+        try {
+            pool.sendAsync(new SystemRequest(SystemRequest.Type.Query, "fail", null)).get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage().contains("no such query"));
+        }
+        assertEquals("a", pool.send(new SystemRequest(SystemRequest.Type.Query, "a", null)));
+        assertEquals(1, connections.get());
+    }
+
+    /**
+     * The requests of a stream should reach the connection of its cursor, even when another request that was in
+     * flight when the stream opened has ended and a plain request would take the other connection
+     */
+    @Test
+    public void channelTest() throws Exception {
+        CompletableFuture<Object> inFlight = pool.sendAsync(new SystemRequest(SystemRequest.Type.Query, "silent", null));
+        ConnectionPool.Channel channel = new ConnectionPool.Channel();
+        Object cursorId = pool.sendAsync(new SystemRequest(SystemRequest.Type.Stream, "stream", null), channel).get(2, TimeUnit.SECONDS);
+        assertEquals(2, connections.get()); // the stream opened on the second connection
+        inFlight.completeExceptionally(new TimeoutException());
+
+        CompletableFuture<Object> silent = pool.sendAsync(new SystemRequest(SystemRequest.Type.Query, "silent", null));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(cursorId, pool.sendAsync(new SystemRequest(SystemRequest.Type.Fetch, "FETCH", cursorId), channel).get(2, TimeUnit.SECONDS));
+        }
+        silent.completeExceptionally(new TimeoutException());
+
+        try {
+            pool.sendAsync(new SystemRequest(SystemRequest.Type.Fetch, "FETCH", cursorId)).get(2, TimeUnit.SECONDS);
+            fail(); // the first connection is free again, a fetch without the channel goes there
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("is not open"));
+        }
+        assertEquals(2, connections.get());
+    }
+}
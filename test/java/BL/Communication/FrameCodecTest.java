@@ -0,0 +1,64 @@
+package BL.Communication;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the frames - codec flags, negotiated compression and the compression stats
+ **/
+public class FrameCodecTest {
+
+    private final WireCodec codec = new BinaryCodec();
+
+    private byte[] frameBody(Object object, boolean compression, String statsKey) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), object, codec, compression, statsKey);
+        return FrameCodec.readFrameBody(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private String text(int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) text.append("league season ").append(text.length() % 97).append(' ');
+        return text.toString();
+    }
+
+    /**
+     * A big frame to a peer that accepts compression should be compressed and decoded back
+     */
+    @Test
+    public void compressedFrameTest() throws Exception {
+        SystemResponse response = new SystemResponse(3, Collections.singletonList(text(100000)));
+        byte[] body = frameBody(response, true, "Test/response");
+
+        assertTrue((body[0] & FrameCodec.COMPRESSED) != 0);
+        assertTrue(body.length < 50000);
+        assertEquals(BinaryCodec.ID, FrameCodec.codecOf(body).getId());
+        SystemResponse decoded = (SystemResponse) FrameCodec.decodeBody(body);
+        assertEquals(3, decoded.requestId);
+        assertEquals(response.data, decoded.data);
+        assertEquals(1, CompressionStats.getCompressedFrames("Test/response"));
+        assertTrue(CompressionStats.getRatio("Test/response") < 0.5);
+    }
+
+    /**
+     * Small frames and frames to peers that don't accept compression should not be compressed
+     */
+    @Test
+    public void uncompressedFrameTest() throws Exception {
+        byte[] small = frameBody(new SystemRequest(SystemRequest.Type.Query, "q", null), true, "Query/request");
+        assertEquals(0, small[0] & FrameCodec.COMPRESSED);
+        assertTrue(FrameCodec.acceptsCompression(small));
+
+        byte[] notAccepted = frameBody(text(100000), false, null);
+        assertEquals(0, notAccepted[0] & FrameCodec.COMPRESSED);
+        assertFalse(FrameCodec.acceptsCompression(notAccepted));
+        assertEquals(text(100000), FrameCodec.decodeBody(notAccepted));
+    }
+}
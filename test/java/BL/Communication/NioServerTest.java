@@ -0,0 +1,153 @@
+package BL.Communication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the selector based server with an echo strategy
+ **/
+public class NioServerTest {
+
+    private NioServer server;
+    private ConnectionPool pool;
+    private int port;
+    private final Set<Object> connections = ConcurrentHashMap.newKeySet();
+    private final Set<Object> closedConnections = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new NioServer(port, 2, 4, 100, new IRequestStrategy() {
+            @Override
+            public Object handleRequest(SystemRequest request, InetAddress clientAddress) {
+                if (request.queryName.equals("fail")) throw new IllegalStateException("no such query");
+                if (request.queryName.startsWith("slow")) {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return request.queryName;
+            }
+
+            @Override
+            public Object handleRequest(SystemRequest request, InetAddress clientAddress, Object connection) {
+                connections.add(connection);
+                return handleRequest(request, clientAddress);
+            }
+
+            @Override
+            public void connectionClosed(Object connection) {
+                closedConnections.add(connection);
+            }
+        });
+        server.start();
+        Thread.sleep(300);
+        pool = new ConnectionPool(InetAddress.getLoopbackAddress(), port, 8, 64, 1000, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        server.stop();
+    }
+
+    /**
+     * Sequential requests on the same connection
+     */
+    @Test
+    public void echoTest() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertEquals("q" + i, pool.send(new SystemRequest(SystemRequest.Type.Query, "q" + i, null)));
+        }
+    }
+
+    /**
+     * Many clients at the same time, each answer should reach the client that asked for it
+     */
+    @Test
+    public void concurrentClientsTest() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<Object>> answers = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String name = "q" + i;
+            answers.add(clients.submit(() -> pool.send(new SystemRequest(SystemRequest.Type.Query, name, null))));
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals("q" + i, answers.get(i).get());
+        }
+        clients.shutdown();
+    }
+
+    /**
+     * A request that throws should be answered with its error, the connection stays usable
+     */
+    @Test
+    public void failedRequestTest() throws Exception {
+        try {
+            pool.send(new SystemRequest(SystemRequest.Type.Query, "fail", null));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("no such query"));
+        }
+        assertEquals("a", pool.send(new SystemRequest(SystemRequest.Type.Query, "a", null)));
+    }
+
+    /**
+     * The strategy should be told when a connection is closed by the client
+     */
+    @Test
+    public void connectionClosedTest() throws Exception {
+        assertEquals("a", pool.send(new SystemRequest(SystemRequest.Type.Query, "a", null)));
+        assertEquals("b", pool.send(new SystemRequest(SystemRequest.Type.Query, "b", null)));
+        assertEquals(1, connections.size());
+        assertTrue(closedConnections.isEmpty());
+        pool.close();
+        for (int i = 0; i < 50 && closedConnections.isEmpty(); i++) Thread.sleep(20);
+        assertEquals(connections, closedConnections);
+    }
+
+    /**
+     * A frame bigger than the socket buffers should be read and written in parts
+     */
+    @Test
+    public void bigFrameTest() throws Exception {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 500000; i++) name.append('x');
+        assertEquals(name.toString(), pool.send(new SystemRequest(SystemRequest.Type.Query, name.toString(), null)));
+    }
+
+    /**
+     * Requests pipelined on a single connection should be answered in the order they complete
+     */
+    @Test
+    public void pipelinedRequestsTest() throws Exception {
+        ConnectionPool singleConnection = new ConnectionPool(InetAddress.getLoopbackAddress(), port, 1, 64, 1000, 60000);
+        try {
+            CompletableFuture<Object> slow = singleConnection.sendAsync(new SystemRequest(SystemRequest.Type.Query, "slow", null));
+            CompletableFuture<Object> fast = singleConnection.sendAsync(new SystemRequest(SystemRequest.Type.Query, "fast", null));
+            assertEquals("fast", fast.get());
+            assertFalse(slow.isDone());
+            assertEquals("slow", slow.get());
+        } finally {
+            singleConnection.close();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package BL.Communication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the push channel - ordered delivery, flow control, heartbeats and resume after reconnect
+ **/
+public class PushServerTest {
+
+    private static final long HEARTBEAT = 300;
+    private static final int WINDOW = 2;
+    private static final int BUFFER = 5;
+
+    private PushServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new PushServer(port, 100, HEARTBEAT, WINDOW, BUFFER, 60000, ExecutionMode.FIXED, 4);
+        server.start();
+        Thread.sleep(300);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /* a raw push connection, acks are sent only by the test */
+    private Socket subscribe(String username, String token, long lastSeen) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(1000);
+        write(socket, SystemRequest.subscribe(username, token, lastSeen));
+        return socket;
+    }
+
+    private static void write(Socket socket, SystemRequest request) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        FrameCodec.writeFrame(out, request, FrameCodec.getDefaultCodec());
+        out.flush();
+    }
+
+    private static PushMessage read(DataInputStream in) throws IOException {
+        return (PushMessage) FrameCodec.readFrame(in);
+    }
+
+    private static void waitFor(List<?> list, int size) throws InterruptedException {
+        for (int i = 0; i < 100 && list.size() < size; i++) Thread.sleep(20);
+    }
+
+    /**
+     * Messages published before the client connected arrive in order, through the client channel
+     */
+    @Test
+    public void deliveryTest() throws Exception {
+        String token = server.open("user");
+        for (int i = 1; i <= 4; i++) assertTrue(server.publish("user", "m" + i));
+        assertFalse(server.publish("other", "m"));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        PushChannel channel = new PushChannel(InetAddress.getLoopbackAddress(), port, "user", token, 1000, HEARTBEAT,
+                received::add, () -> {});
+        waitFor(received, 4);
+        server.publish("user", "m5");
+        waitFor(received, 5);
+        assertEquals(Arrays.asList("m1", "m2", "m3", "m4", "m5"), received);
+        assertEquals(5, channel.getLastSeen());
+        channel.close();
+    }
+
+    /**
+     * At most WINDOW messages are sent before they are acknowledged, the rest are sent again after a reconnect
+     */
+    @Test
+    public void flowControlAndResumeTest() throws Exception {
+        String token = server.open("user");
+        for (int i = 1; i <= 4; i++) server.publish("user", "m" + i);
+
+        try (Socket socket = subscribe("user", token, 0)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertEquals(1, read(in).getSequence());
+            assertEquals(2, read(in).getSequence());
+            write(socket, SystemRequest.ack(1));
+            assertEquals(3, read(in).getSequence());
+            socket.setSoTimeout((int) HEARTBEAT / 2);
+            try {
+                read(in);
+                fail("only " + WINDOW + " messages may wait for an ack");
+            } catch (SocketTimeoutException expected) {
+            }
+        }
+
+        // 2 and 3 were sent but not acknowledged
+        try (Socket socket = subscribe("user", token, 1)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            PushMessage message = read(in);
+            assertEquals(2, message.getSequence());
+            assertEquals("m2", message.getPayload());
+            assertEquals(3, read(in).getSequence());
+            write(socket, SystemRequest.ack(3));
+            assertEquals(4, read(in).getSequence());
+            write(socket, SystemRequest.ack(4));
+            // idle - only heartbeats
+            assertEquals(PushMessage.HEARTBEAT, read(in).getSequence());
+        }
+    }
+
+    /**
+     * The receipt of a message runs only when the client acknowledged it - not when it was published, sent or dropped
+     */
+    @Test
+    public void receiptTest() throws Exception {
+        String token = server.open("user");
+        List<String> receipts = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= BUFFER + 1; i++) {
+            String message = "m" + i;
+            assertTrue(server.publish("user", message, () -> receipts.add(message)));
+        }
+        assertTrue(receipts.isEmpty()); // m1 was dropped, the client is not connected
+
+        try (Socket socket = subscribe("user", token, 0)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertEquals(2, read(in).getSequence());
+            assertEquals(3, read(in).getSequence());
+            Thread.sleep(100);
+            assertTrue(receipts.isEmpty()); // sent, not acknowledged
+            write(socket, SystemRequest.ack(2));
+            assertEquals(4, read(in).getSequence());
+            waitFor(receipts, 1);
+            assertEquals(Arrays.asList("m2"), receipts);
+        }
+
+        // the resumed client tells it handled 3
+        try (Socket socket = subscribe("user", token, 3)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertEquals(4, read(in).getSequence());
+            waitFor(receipts, 2);
+            assertEquals(Arrays.asList("m2", "m3"), receipts);
+        }
+        server.close("user");
+        Thread.sleep(100);
+        assertEquals(Arrays.asList("m2", "m3"), receipts);
+    }
+
+    /**
+     * Messages that don't fit the buffer are dropped, the client finds the gap and resyncs
+     */
+    @Test
+    public void overflowTest() throws Exception {
+        String token = server.open("user");
+        for (int i = 1; i <= BUFFER + 3; i++) server.publish("user", "m" + i);
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        AtomicInteger resyncs = new AtomicInteger();
+        PushChannel channel = new PushChannel(InetAddress.getLoopbackAddress(), port, "user", token, 1000, HEARTBEAT,
+                received::add, resyncs::incrementAndGet);
+        waitFor(received, BUFFER);
+        assertEquals("m4", received.get(0));
+        assertEquals(BUFFER, received.size());
+        assertEquals(1, resyncs.get()); // the connection only, no gap after the first message
+        channel.close();
+    }
+
+    /**
+     * Only logged in users may subscribe, a new login closes the previous channel of the user
+     */
+    @Test
+    public void closedTest() throws Exception {
+        try (Socket socket = subscribe("nobody", "token", 0)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertEquals(PushMessage.CLOSED, read(in).getSequence());
+        }
+
+        String token = server.open("user");
+        try (Socket socket = subscribe("user", token, 0)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Thread.sleep(100);
+            server.open("user");
+            assertEquals(PushMessage.CLOSED, read(in).getSequence());
+        }
+        assertTrue(server.close("user"));
+        assertFalse(server.publish("user", "m"));
+    }
+
+    /**
+     * Only the client that got the token at login can subscribe, a wrong token does not disturb it
+     */
+    @Test
+    public void tokenTest() throws Exception {
+        String token = server.open("user");
+        try (Socket socket = subscribe("user", token, 0)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            String guess = (token.charAt(0) == '0' ? "1" : "0") + token.substring(1);
+            try (Socket intruder = subscribe("user", guess, 0)) {
+                DataInputStream intruderIn = new DataInputStream(new BufferedInputStream(intruder.getInputStream()));
+                assertEquals(PushMessage.CLOSED, read(intruderIn).getSequence());
+            }
+            try (Socket intruder = subscribe("user", null, 0)) {
+                DataInputStream intruderIn = new DataInputStream(new BufferedInputStream(intruder.getInputStream()));
+                assertEquals(PushMessage.CLOSED, read(intruderIn).getSequence());
+            }
+            server.publish("user", "m1");
+            assertEquals("m1", read(in).getPayload());
+        }
+        assertNotEquals(token, server.open("user"));
+    }
+
+    /**
+     * A client that doesn't read does not delay the messages of the other clients
+     */
+    @Test
+    public void slowReaderTest() throws Exception {
+        String slowToken = server.open("slow");
+        String token = server.open("user");
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 4 * 1024 * 1024) large.append("0123456789abcdef");
+
+        try (Socket slow = subscribe("slow", slowToken, 0)) {
+            Thread.sleep(100);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < WINDOW; i++) server.broadcast(large.toString()); // more than the socket buffers
+            assertTrue(System.currentTimeMillis() - start < 1000);
+
+            List<Object> received = new CopyOnWriteArrayList<>();
+            PushChannel channel = new PushChannel(InetAddress.getLoopbackAddress(), port, "user", token, 1000, HEARTBEAT,
+                    payload -> received.add(payload instanceof String && ((String) payload).length() > 100 ? "large" : payload),
+                    () -> {});
+            server.publish("user", "m");
+            waitFor(received, WINDOW + 1);
+            assertEquals(Arrays.asList("large", "large", "m"), received);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package BL.Communication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the lazily consumed chunks of a streamed query against a fake server cursor
+ **/
+public class QueryStreamTest {
+
+    private final List<SystemRequest> sent = new ArrayList<>();
+
+    /**
+     * serves the chunks [0,1,2] [3,4,5] [6] of cursor 9
+     */
+    private CompletableFuture<Object> cursor(SystemRequest request) {
+        sent.add(request);
+        if (request.type == SystemRequest.Type.CloseStream) return CompletableFuture.completedFuture(true);
+        int fetches = (int) sent.stream().filter(r -> r.type == SystemRequest.Type.Fetch).count();
+        return CompletableFuture.completedFuture(fetches == 1 ?
+                new QueryChunk(9, Arrays.asList(3, 4, 5), false) : new QueryChunk(9, Arrays.asList(6), true));
+    }
+
+    /**
+     * All the rows of all the chunks in order, the next chunk is asked only after the current one arrived
+     */
+    @Test
+    public void readAllChunksTest() {
+        QueryStream stream = new QueryStream(this::cursor, new QueryChunk(9, Arrays.asList(0, 1, 2), false));
+        assertEquals(1, sent.size());
+
+        List<Object> rows = new ArrayList<>();
+        stream.forEachRemaining(rows::add);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6), rows);
+        assertEquals(2, sent.size());
+        assertEquals(9L, sent.get(0).data);
+
+        stream.close();
+        assertEquals(2, sent.size()); // the server closes the cursor after the last chunk
+    }
+
+    /**
+     * Closing a stream before its end should close the cursor on the server
+     */
+    @Test
+    public void closeBeforeEndTest() {
+        QueryStream stream = new QueryStream(this::cursor, new QueryChunk(9, Arrays.asList(0, 1, 2), false));
+        assertEquals(0, stream.next());
+        stream.close();
+        assertFalse(stream.hasNext());
+        assertEquals(SystemRequest.Type.CloseStream, sent.get(sent.size() - 1).type);
+    }
+
+    /**
+     * A single chunk stream should not send anything
+     */
+    @Test
+    public void singleChunkTest() {
+        QueryStream stream = new QueryStream(this::cursor, new QueryChunk(9, Arrays.asList(0), true));
+        assertTrue(stream.hasNext());
+        assertEquals(0, stream.next());
+        assertFalse(stream.hasNext());
+        stream.close();
+        assertTrue(sent.isEmpty());
+    }
+}
@@ -0,0 +1,216 @@
+package BL.Communication;
+
+import DL.Game.LeagueSeason.League;
+import DL.Game.LeagueSeason.LeagueSeason;
+import DL.Game.LeagueSeason.Season;
+import DL.Game.Match;
+import DL.Game.Policy.GamePolicy;
+import DL.Game.Policy.ScorePolicy;
+import DL.Game.Referee;
+import DL.Projections.RefereeRow;
+import DL.Projections.TeamRow;
+import DL.Team.Assets.Stadium;
+import DL.Team.Team;
+import DL.Users.Fan;
+import DL.Users.Notification;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the wire codecs - round trips of requests, responses and entity graphs,
+ *                  and a small size/time benchmark of the binary codec against java serialization
+ **/
+public class WireCodecTest {
+
+    private final WireCodec binary = new BinaryCodec();
+    private final WireCodec java = new JavaSerializationCodec();
+
+    private Object roundTrip(WireCodec codec, Object object) throws Exception {
+        byte[] bytes = codec.encode(object);
+        return codec.decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * builds a league season with teams, matches and referees that point back to each other
+     */
+    private LeagueSeason leagueSeason(int teams) {
+        LeagueSeason leagueSeason = new LeagueSeason(new League("Premier"), new Season(2020), new GamePolicy(), new ScorePolicy(), new Date(1000));
+        List<Team> created = new ArrayList<>();
+        for (int i = 0; i < teams; i++) {
+            Team team = new Team("Team" + i, true, false);
+            Stadium stadium = new Stadium("Stadium" + i, 1000 * i, team);
+            team.addStadium(stadium);
+            leagueSeason.addTeam(team);
+            team.addLeagueSeason(leagueSeason);
+            created.add(team);
+        }
+        for (int i = 0; i < teams; i++) {
+            for (int j = 0; j < teams; j++) {
+                if (i == j) continue;
+                Team home = created.get(i);
+                Team away = created.get(j);
+                Match match = new Match(new Date(i * 100000L + j), home, away, leagueSeason, home.getStadiums().get(0));
+                home.getHomeMatches().add(match);
+                away.getAwayMatches().add(match);
+                leagueSeason.getMatches().add(match);
+            }
+        }
+        Referee referee = new Referee("main", "ref", new Fan("ref", "ref@mail.com", "pw"), true);
+        leagueSeason.addReferee(referee);
+        return leagueSeason;
+    }
+
+    /**
+     * Request envelope with a map of parameters
+     */
+    @Test
+    public void requestRoundTripTest() throws Exception {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("name", "Team A");
+        parameters.put("year", 2020);
+        parameters.put("id", 123456789012L);
+        parameters.put("active", true);
+        parameters.put("date", new Date(5000));
+        SystemRequest request = new SystemRequest(SystemRequest.Type.Query, "teamByName", parameters);
+        request.requestId = 42;
+
+        SystemRequest decoded = (SystemRequest) roundTrip(binary, request);
+        assertEquals(SystemRequest.Type.Query, decoded.type);
+        assertEquals("teamByName", decoded.queryName);
+        assertEquals(42, decoded.requestId);
+        assertEquals(parameters, decoded.data);
+        assertNull(decoded.fetchGraph);
+    }
+
+    /**
+     * Query request with a fetch graph
+     */
+    @Test
+    public void fetchGraphRoundTripTest() throws Exception {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("name", "Team A");
+        SystemRequest request = SystemRequest.query("teamByName", parameters, "Team.players");
+
+        SystemRequest decoded = (SystemRequest) roundTrip(binary, request);
+        assertEquals("teamByName", decoded.queryName);
+        assertEquals("Team.players", decoded.fetchGraph);
+        assertEquals(parameters, decoded.data);
+    }
+
+    /**
+     * Batch of query requests in a single request
+     */
+    @Test
+    public void batchRequestRoundTripTest() throws Exception {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("year", 2020);
+        SystemRequest batch = SystemRequest.batch(Arrays.asList(
+                new SystemRequest(SystemRequest.Type.Query, "Leagues", null),
+                new SystemRequest(SystemRequest.Type.Query, "SeasonByYear", parameters)));
+
+        SystemRequest decoded = (SystemRequest) roundTrip(binary, batch);
+        assertEquals(SystemRequest.Type.Batch, decoded.type);
+        List<SystemRequest> queries = (List<SystemRequest>) decoded.data;
+        assertEquals(2, queries.size());
+        assertEquals("Leagues", queries.get(0).queryName);
+        assertEquals(parameters, queries.get(1).data);
+    }
+
+    /**
+     * Shared objects and cycles should be decoded to the same object
+     */
+    @Test
+    public void entityGraphRoundTripTest() throws Exception {
+        LeagueSeason leagueSeason = leagueSeason(3);
+        SystemResponse decoded = (SystemResponse) roundTrip(binary, new SystemResponse(7, Collections.singletonList(leagueSeason)));
+        LeagueSeason result = (LeagueSeason) ((List) decoded.data).get(0);
+
+        assertEquals(7, decoded.requestId);
+        assertEquals(leagueSeason, result);
+        assertEquals(3, result.getTeamsParticipate().size());
+        assertEquals(6, result.getMatches().size());
+        Match match = result.getMatches().get(0);
+        assertSame(result, match.getLeagueSeason());
+        assertSame(match, match.getHomeTeam().getHomeMatches().get(0));
+        assertSame(result.getTeamsParticipate().get(0), match.getHomeTeam());
+        assertEquals("ref", result.getReferees().get(0).getName());
+    }
+
+    /**
+     * Maps with entity keys (notifications of a user)
+     */
+    @Test
+    public void userNotificationsRoundTripTest() throws Exception {
+        Fan fan = new Fan("fan", "fan@mail.com", "pw");
+        fan.addNotification(new Notification("goal"));
+        fan.addNotification(new Notification("red card"));
+        Fan decoded = (Fan) roundTrip(binary, fan);
+        assertEquals(2, decoded.getNotifications().size());
+        assertEquals("fan", decoded.getUsername());
+    }
+
+    /**
+     * Objects the schema can't describe should fall back to java serialization
+     */
+    @Test
+    public void fallbackTest() throws Exception {
+        TreeMap<String, Integer> sorted = new TreeMap<>();
+        sorted.put("b", 2);
+        sorted.put("a", 1);
+        assertEquals(sorted, roundTrip(binary, sorted));
+        assertEquals('c', roundTrip(binary, 'c'));
+    }
+
+    /**
+     * Projection rows are immutable and should be decoded with all their fields, and be much smaller than the entities
+     */
+    @Test
+    public void projectionRowsTest() throws Exception {
+        List<Object> rows = Arrays.asList(new TeamRow("Team A", true, false), new RefereeRow(7, "ref", "fan", true));
+        List<Object> decoded = (List<Object>) roundTrip(binary, rows);
+        TeamRow team = (TeamRow) decoded.get(0);
+        RefereeRow referee = (RefereeRow) decoded.get(1);
+        assertEquals("Team A", team.getName());
+        assertTrue(team.isActive());
+        assertFalse(team.isClose());
+        assertEquals(7, referee.getId());
+        assertEquals("ref", referee.getName());
+        assertEquals("fan", referee.getUsername());
+
+        LeagueSeason leagueSeason = leagueSeason(20);
+        List<TeamRow> teamRows = new ArrayList<>();
+        for (Team t : leagueSeason.getTeamsParticipate()) teamRows.add(new TeamRow(t.getName(), t.isActive(), t.isClose()));
+        assertTrue(binary.encode(teamRows).length * 10 < binary.encode(leagueSeason.getTeamsParticipate()).length);
+    }
+
+    /**
+     * Size and time of encoding a big league season with both codecs
+     */
+    @Test
+    public void benchmarkTest() throws Exception {
+        SystemResponse response = new SystemResponse(1, Collections.singletonList(leagueSeason(20)));
+        int javaSize = java.encode(response).length;
+        int binarySize = binary.encode(response).length;
+
+        long javaTime = time(java, response);
+        long binaryTime = time(binary, response);
+        System.out.println(String.format("league season 20 teams: java %d bytes %.2fms, binary %d bytes %.2fms",
+                javaSize, javaTime / 1e6, binarySize, binaryTime / 1e6));
+
+        assertTrue(binarySize < javaSize);
+    }
+
+    /**
+     * @return average nano seconds of an encode + decode
+     */
+    private long time(WireCodec codec, Object object) throws Exception {
+        for (int i = 0; i < 20; i++) roundTrip(codec, object); // warm up
+        int rounds = 50;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) roundTrip(codec, object);
+        return (System.nanoTime() - start) / rounds;
+    }
+}
@@ -0,0 +1,89 @@
+package BL.Server.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the query result cache - LRU eviction, time to live and write driven invalidation
+ **/
+public class QueryCacheTest {
+
+    private final Set<String> leagueTables = new HashSet<>(Arrays.asList("League"));
+    private final Set<String> teamTables = new HashSet<>(Arrays.asList("Team", "Stadium"));
+
+    private QueryCache.Key key(String queryName, Object... parameters) {
+        HashMap<String, Object> map = new HashMap<>();
+        for (int i = 0; i < parameters.length; i += 2) map.put((String) parameters[i], parameters[i + 1]);
+        return new QueryCache.Key(queryName, map, 0, 0);
+    }
+
+    @Test
+    public void hitAndMissTest() {
+        QueryCache cache = new QueryCache(10, 60000);
+        assertNull(cache.get(key("TeamByName", "name", "A")));
+        cache.put(key("TeamByName", "name", "A"), teamTables, cache.epoch(), Collections.singletonList("team A"));
+
+        assertEquals(Collections.singletonList("team A"), cache.get(key("TeamByName", "name", "A")));
+        assertNull(cache.get(key("TeamByName", "name", "B")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void lruEvictionTest() {
+        QueryCache cache = new QueryCache(2, 60000);
+        cache.put(key("a"), leagueTables, cache.epoch(), "a");
+        cache.put(key("b"), leagueTables, cache.epoch(), "b");
+        cache.get(key("a")); // b is now the least recently used
+        cache.put(key("c"), leagueTables, cache.epoch(), "c");
+
+        assertEquals("a", cache.get(key("a")));
+        assertNull(cache.get(key("b")));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void ttlTest() throws Exception {
+        QueryCache cache = new QueryCache(10, 50);
+        cache.put(key("a"), leagueTables, cache.epoch(), "a");
+        Thread.sleep(100);
+        assertNull(cache.get(key("a")));
+    }
+
+    /**
+     * A write to a table removes only the results that read it
+     */
+    @Test
+    public void invalidationTest() {
+        QueryCache cache = new QueryCache(10, 60000);
+        cache.put(key("GetAllLeagues"), leagueTables, cache.epoch(), "leagues");
+        cache.put(key("activeTeam"), teamTables, cache.epoch(), "teams");
+
+        cache.invalidate(Collections.singletonList("Stadium"));
+        assertEquals("leagues", cache.get(key("GetAllLeagues")));
+        assertNull(cache.get(key("activeTeam")));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    /**
+     * A result read before a write to its tables committed should not be cached
+     */
+    @Test
+    public void writeDuringQueryTest() {
+        QueryCache cache = new QueryCache(10, 60000);
+        long epoch = cache.epoch();
+        cache.invalidate(Collections.singletonList("Team"));
+        cache.put(key("activeTeam"), teamTables, epoch, "stale teams");
+        cache.put(key("GetAllLeagues"), leagueTables, epoch, "leagues");
+
+        assertNull(cache.get(key("activeTeam")));
+        assertEquals("leagues", cache.get(key("GetAllLeagues")));
+    }
+}
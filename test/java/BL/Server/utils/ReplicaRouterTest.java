@@ -0,0 +1,75 @@
+package BL.Server.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the routing of reads between the primary and the read replica - staleness tolerance and
+ *                  read your writes
+ **/
+public class ReplicaRouterTest {
+
+    private final Set<String> teamTables = new HashSet<>(Arrays.asList("Team", "Stadium"));
+    private final Set<String> leagueTables = Collections.singleton("League");
+
+    /* the lag is not measured - the replica is never behind at a check */
+    private ReplicaRouter router(long maxStaleness) {
+        return new ReplicaRouter(null, 1, maxStaleness, "", 0);
+    }
+
+    @Test
+    public void notCheckedTest() {
+        ReplicaRouter router = router(60000);
+        assertEquals(ReplicaRouter.Route.PRIMARY, router.route("client", teamTables));
+        assertEquals(-1, router.getLag());
+    }
+
+    @Test
+    public void caughtUpTest() throws Exception {
+        ReplicaRouter router = router(60000);
+        router.written("writer", teamTables);
+        Thread.sleep(5);
+        router.checkLag();
+
+        assertEquals(ReplicaRouter.Route.REPLICA, router.route("writer", teamTables));
+        assertEquals(ReplicaRouter.Route.REPLICA, router.route("reader", leagueTables));
+        assertEquals(2, router.getReplicaReads());
+    }
+
+    @Test
+    public void readYourWritesTest() throws Exception {
+        ReplicaRouter router = router(60000);
+        router.checkLag();
+        router.written("writer", teamTables);
+
+        // the writer reads the primary until the replica has its write
+        assertEquals(ReplicaRouter.Route.PRIMARY, router.route("writer", teamTables));
+        assertEquals(ReplicaRouter.Route.PRIMARY, router.route("writer", null));
+        assertEquals(2, router.getOwnWriteReads());
+        // other clients may read the replica without the write, tables that were not written are up to date
+        assertEquals(ReplicaRouter.Route.STALE_REPLICA, router.route("reader", teamTables));
+        assertEquals(ReplicaRouter.Route.REPLICA, router.route("writer", leagueTables));
+
+        Thread.sleep(5);
+        router.checkLag();
+        assertEquals(ReplicaRouter.Route.REPLICA, router.route("writer", teamTables));
+    }
+
+    @Test
+    public void stalenessTest() throws Exception {
+        ReplicaRouter router = router(500);
+        router.checkLag();
+        router.written("writer", teamTables);
+        assertEquals(ReplicaRouter.Route.STALE_REPLICA, router.route("reader", teamTables));
+
+        Thread.sleep(700); // no lag check - the replica may be behind more than the staleness tolerance
+        assertEquals(ReplicaRouter.Route.PRIMARY, router.route("reader", teamTables));
+        assertEquals(ReplicaRouter.Route.REPLICA, router.route("reader", leagueTables));
+    }
+}
@@ -0,0 +1,87 @@
+package BL.Server.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the coalescing of identical queries that run at the same time
+ **/
+public class SingleFlightTest {
+
+    private final Set<String> matchTables = new HashSet<>(Arrays.asList("Match", "Team"));
+    private final QueryCache.Key key = new QueryCache.Key("nextMatchesListByTeam", Collections.singletonMap("name", "A"), 0, 0);
+
+    /**
+     * Requests that arrive while the query runs should wait for it and share its result
+     */
+    @Test
+    public void coalesceTest() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newFixedThreadPool(10);
+        List<Future<Object>> answers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            answers.add(requests.submit(() -> singleFlight.execute(key, matchTables, () -> {
+                executions.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                return "matches";
+            })));
+        }
+        while (singleFlight.getExecutions() + singleFlight.getDeduplicated() < 10) Thread.sleep(10);
+        release.countDown();
+
+        for (Future<Object> answer : answers) assertEquals("matches", answer.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertEquals(9, singleFlight.getDeduplicated());
+        assertEquals(0, singleFlight.getRunning());
+        requests.shutdown();
+    }
+
+    /**
+     * A write to a table the running query reads should make the next requests run a new query
+     */
+    @Test
+    public void detachTest() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newSingleThreadExecutor();
+        Future<Object> before = requests.submit(() -> singleFlight.execute(key, matchTables, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            return "before write";
+        }));
+        while (singleFlight.getRunning() == 0) Thread.sleep(10);
+
+        singleFlight.detach(Collections.singleton("League"));
+        assertEquals(1, singleFlight.getRunning());
+        singleFlight.detach(Collections.singleton("Match"));
+        assertEquals(0, singleFlight.getRunning());
+
+        assertEquals("after write", singleFlight.execute(key, matchTables, () -> "after write"));
+        release.countDown();
+        assertEquals("before write", before.get(5, TimeUnit.SECONDS));
+        assertEquals(2, singleFlight.getExecutions());
+        assertEquals(0, singleFlight.getDeduplicated());
+        requests.shutdown();
+    }
+}
@@ -0,0 +1,90 @@
+package BL.Server.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Tests the notification topic index - union of topics, lazy loading and write driven invalidation
+ **/
+public class TopicIndexTest {
+
+    private final Map<String, List<String>> members = new HashMap<>();
+    private final Map<String, List<String>> followers = new HashMap<>();
+    private final List<String> loaded = new ArrayList<>();
+    private TopicIndex index;
+
+    @Before
+    public void setUp() {
+        members.put("A", new ArrayList<>(Arrays.asList("coach", "player")));
+        followers.put("1", new ArrayList<>(Arrays.asList("fan", "player")));
+        index = new TopicIndex(2);
+        index.register("team", Collections.singleton("TeamUser"), id -> {
+            loaded.add("team:" + id);
+            return members.get(id);
+        });
+        index.register("page", Collections.singleton("UserTable_Page"), id -> {
+            loaded.add("page:" + id);
+            return followers.get(id);
+        });
+    }
+
+    @Test
+    public void resolveTest() {
+        assertEquals(Arrays.asList("coach", "player", "fan"), index.resolve(Arrays.asList("team:A", "page:1")));
+        assertEquals(Arrays.asList("coach", "player", "fan"), index.resolve(Arrays.asList("page:1", "team:A")));
+        assertEquals(Arrays.asList("team:A", "page:1"), loaded);
+        assertEquals(2, index.getHits());
+        assertEquals(3, index.getSubscriberIds());
+
+        assertNull(index.resolve(Arrays.asList("team:A", "team:B"))); // not read
+        assertNull(index.resolve(Collections.singletonList("league:1"))); // unknown kind
+        assertTrue(index.resolve(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void invalidationTest() {
+        index.resolve(Arrays.asList("team:A", "page:1"));
+        followers.get("1").add("newFan");
+        index.invalidate(Collections.singleton("Stadium"));
+        assertEquals(Arrays.asList("player", "fan"), index.resolve(Collections.singletonList("page:1")));
+
+        index.invalidate(Arrays.asList("Stadium", "UserTable_Page"));
+        assertEquals(Arrays.asList("player", "fan", "newFan"), index.resolve(Collections.singletonList("page:1")));
+        assertEquals(Arrays.asList("team:A", "page:1", "page:1"), loaded);
+        assertEquals(1, index.getInvalidations());
+
+        index.resolve(Collections.singletonList("team:A"));
+        assertEquals(3, loaded.size()); // the team topic was kept
+    }
+
+    @Test
+    public void writeWhileLoadingTest() {
+        index.register("team", null, id -> {
+            index.invalidate(Collections.singleton("Match")); // a write committed while the topic was read
+            return members.get(id);
+        });
+        assertEquals(Arrays.asList("coach", "player"), index.resolve(Collections.singletonList("team:A")));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void lruTest() {
+        members.put("B", Collections.singletonList("b"));
+        index.resolve(Collections.singletonList("team:A"));
+        index.resolve(Collections.singletonList("page:1"));
+        index.resolve(Collections.singletonList("team:A"));
+        index.resolve(Collections.singletonList("team:B")); // drops page:1
+        assertEquals(2, index.size());
+        index.resolve(Collections.singletonList("page:1"));
+        assertEquals(Arrays.asList("team:A", "page:1", "team:B", "page:1"), loaded);
+    }
+}
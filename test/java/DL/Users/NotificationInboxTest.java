@@ -0,0 +1,75 @@
+package DL.Users;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:     Test suite for the paged view of the notifications of a user
+ * ID:              X
+ **/
+public class NotificationInboxTest
+{
+    private final List<InboxNotification> store = new ArrayList<>();
+    private final List<Integer> pagesRead = new ArrayList<>();
+    private NotificationInbox inbox;
+
+    @Before
+    public void init()
+    {
+        for(int i = 0; i < 5; i++) store.add(new InboxNotification(new Notification("n" + i), "fan"));
+        inbox = new NotificationInbox();
+        inbox.setPageSize(2);
+        inbox.setPageLoader((firstResult, maxResults) -> {
+            pagesRead.add(firstResult);
+            return new ArrayList<>(store.subList(firstResult, Math.min(firstResult + maxResults, store.size())));
+        });
+    }
+
+    @Test
+    public void testPagesReadWhileIterating()
+    {
+        Map<Notification, Boolean> notifications = inbox.asMap();
+        int seen = 0;
+        for(Map.Entry<Notification, Boolean> entry : notifications.entrySet())
+        {
+            assertFalse(entry.getValue());
+            if(++seen == 2) break;
+        }
+        assertEquals(1, pagesRead.size());
+
+        assertEquals(5, notifications.size());
+        assertEquals(3, pagesRead.size());
+        assertTrue(inbox.isComplete());
+    }
+
+    @Test
+    public void testLoadedNotificationsAreNotReadAgain()
+    {
+        Notification pushed = new Notification("pushed");
+        assertTrue(inbox.add(pushed));
+        assertFalse(inbox.add(pushed));
+        inbox.markAsRead(pushed);
+
+        assertTrue(inbox.asMap().get(pushed));
+        assertTrue(pagesRead.isEmpty());
+        assertEquals(6, inbox.asMap().size());
+    }
+
+    @Test
+    public void testWithoutPageLoader()
+    {
+        User fan = new Fan("fan", "fan@mail.com", "pw");
+        fan.addNotification(new Notification("goal"));
+        fan.markAllNotificationsAsRead();
+
+        assertEquals(1, fan.getNotifications().size());
+        assertTrue(fan.getNotifications().values().iterator().next());
+        assertTrue(fan.getInbox().isComplete());
+    }
+}